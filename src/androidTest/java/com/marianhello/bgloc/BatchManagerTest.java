@@ -10,6 +10,7 @@ import android.util.JsonToken;
 
 import com.marianhello.bgloc.data.ArrayListLocationTemplate;
 import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.CborLocationEncoder;
 import com.marianhello.bgloc.data.HashMapLocationTemplate;
 import com.marianhello.bgloc.data.LocationTemplate;
 import com.marianhello.bgloc.data.LocationTemplateFactory;
@@ -27,12 +28,17 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry.SQL_DROP_LOCATION_TABLE;
 
@@ -518,6 +524,107 @@ public class BatchManagerTest {
 
     }
 
+    @Test
+    public void testCreateBatchSpanningMultiplePages() throws IOException {
+        SQLiteLocationDAO dao = new SQLiteLocationDAO(mDbHelper.getWritableDatabase());
+        List<BackgroundLocation> pending = new ArrayList<BackgroundLocation>();
+        for (int i = 0; i < 1201; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setTime(1000 + i);
+            location.setStatus(BackgroundLocation.SYNC_PENDING);
+            pending.add(location);
+        }
+        dao.persistLocations(pending);
+
+        BatchManager batchManager = new BatchManager(mContext);
+        File batchFile = batchManager.createBatch(1000L, 1201);
+        Assert.assertNotNull(batchFile);
+
+        List<BackgroundLocation> locations = readLocationsArray(new JsonReader(new FileReader(batchFile)));
+        Assert.assertEquals(1201, locations.size());
+        for (int i = 0; i < locations.size(); i++) {
+            Assert.assertEquals(1000 + i, locations.get(i).getTime());
+        }
+    }
+
+    @Test
+    public void testCreateBatchWithMaxBatchSize() throws IOException {
+        SQLiteLocationDAO dao = new SQLiteLocationDAO(mDbHelper.getWritableDatabase());
+        List<BackgroundLocation> pending = new ArrayList<BackgroundLocation>();
+        for (int i = 0; i < 1200; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setTime(1000 + i);
+            location.setStatus(BackgroundLocation.SYNC_PENDING);
+            pending.add(location);
+        }
+        dao.persistLocations(pending);
+
+        BatchManager batchManager = new BatchManager(mContext);
+        int time = 1000;
+        long batchId = 1000L;
+        int[] expectedSizes = { 700, 500 };
+        for (int expectedSize : expectedSizes) {
+            File batchFile = batchManager.createBatch(batchId, 0, null, 700);
+            List<BackgroundLocation> locations = readLocationsArray(new JsonReader(new FileReader(batchFile)));
+            Assert.assertEquals(expectedSize, locations.size());
+            for (BackgroundLocation location : locations) {
+                Assert.assertEquals(time++, location.getTime());
+            }
+            batchManager.setBatchCompleted(batchId++);
+        }
+
+        Assert.assertNull(batchManager.createBatch(batchId, 0, null, 700));
+    }
+
+    @Test
+    public void testCreateCompressedBatch() throws IOException {
+        SQLiteLocationDAO dao = new SQLiteLocationDAO(mDbHelper.getWritableDatabase());
+        for (int i = 0; i < 100; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setTime(1000 + i);
+            location.setStatus(BackgroundLocation.SYNC_PENDING);
+            dao.persistLocation(location);
+        }
+
+        BatchManager batchManager = new BatchManager(mContext);
+        File batchFile = batchManager.createBatch(1000L, 0, null, 0, true);
+        List<BackgroundLocation> locations = readLocationsArray(new JsonReader(
+                new InputStreamReader(new GZIPInputStream(new FileInputStream(batchFile)), "UTF-8")));
+        Assert.assertEquals(100, locations.size());
+        Assert.assertEquals(1000, locations.get(0).getTime());
+        Assert.assertEquals(1099, locations.get(99).getTime());
+    }
+
+    @Test
+    public void testCreateCborBatch() throws IOException {
+        SQLiteLocationDAO dao = new SQLiteLocationDAO(mDbHelper.getWritableDatabase());
+        for (int i = 0; i < 2; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setTime(1000 + i);
+            location.setStatus(BackgroundLocation.SYNC_PENDING);
+            dao.persistLocation(location);
+        }
+
+        ArrayList list = new ArrayList();
+        list.add("@time");
+        LocationTemplate template = LocationTemplateFactory.fromArrayList(list);
+
+        BatchManager batchManager = new BatchManager(mContext);
+        File batchFile = batchManager.createBatch(1000L, 0, template, 0, false, new CborLocationEncoder());
+        Assert.assertTrue(batchFile.getName().endsWith(".cbor"));
+
+        // [_ [_ 1000], [_ 1001]]
+        byte[] expected = { (byte) 0x9f,
+                (byte) 0x9f, 0x19, 0x03, (byte) 0xe8, (byte) 0xff,
+                (byte) 0x9f, 0x19, 0x03, (byte) 0xe9, (byte) 0xff,
+                (byte) 0xff };
+        byte[] content = new byte[(int) batchFile.length()];
+        DataInputStream is = new DataInputStream(new FileInputStream(batchFile));
+        is.readFully(content);
+        is.close();
+        Assert.assertTrue(Arrays.equals(expected, content));
+    }
+
     @Test
     public void testBatchWithNulls() throws JSONException, IOException {
 
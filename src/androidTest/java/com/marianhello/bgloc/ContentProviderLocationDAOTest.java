@@ -1,10 +1,12 @@
 package com.marianhello.bgloc;
 
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.location.Location;
 
 import com.marianhello.bgloc.data.BackgroundLocation;
 import com.marianhello.bgloc.data.LocationDAO;
+import com.marianhello.bgloc.data.LocationJournal;
 import com.marianhello.bgloc.data.provider.ContentProviderLocationDAO;
 import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
 import com.marianhello.bgloc.test.LocationProviderTestCase;
@@ -12,19 +14,28 @@ import com.marianhello.bgloc.test.LocationProviderTestCase;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
 
 import static android.support.test.InstrumentationRegistry.getContext;
 import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry.SQL_DROP_LOCATION_TABLE;
+import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationSlotEntry.SQL_DROP_LOCATION_SLOT_TABLE;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
 public class ContentProviderLocationDAOTest extends LocationProviderTestCase {
     public void deleteDatabase() {
         SQLiteOpenHelper dbHelper = new SQLiteOpenHelper(getContext());
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         dbHelper.execAndLogSql(db, SQL_DROP_LOCATION_TABLE);
+        dbHelper.execAndLogSql(db, SQL_DROP_LOCATION_SLOT_TABLE);
         dbHelper.onCreate(db);
     }
 
@@ -108,6 +119,101 @@ public class ContentProviderLocationDAOTest extends LocationProviderTestCase {
         assertEquals(0, locations.size());
     }
 
+    @Test
+    public void testPersistLocations() {
+        LocationDAO dao = new ContentProviderLocationDAO(getContext());
+
+        ArrayList<BackgroundLocation> bgLocations = new ArrayList<BackgroundLocation>();
+        for (int i = 0; i < 10; i++) {
+            bgLocations.add(BackgroundLocation.fromLocation(new Location("fake")));
+        }
+
+        dao.persistLocations(bgLocations);
+
+        for (BackgroundLocation bgLocation : bgLocations) {
+            assertNotNull(bgLocation.getLocationId());
+            assertNotNull(dao.getLocationById(bgLocation.getLocationId()));
+        }
+        assertEquals(10, dao.getAllLocations().size());
+    }
+
+    @Test
+    public void testPersistLocationsWhenBatchFailsShouldThrow() {
+        LocationDAO dao = new ContentProviderLocationDAO(getContext());
+        SQLiteOpenHelper dbHelper = new SQLiteOpenHelper(getContext());
+        dbHelper.execAndLogSql(dbHelper.getWritableDatabase(), SQL_DROP_LOCATION_TABLE);
+
+        ArrayList<BackgroundLocation> bgLocations = new ArrayList<BackgroundLocation>();
+        for (int i = 0; i < 3; i++) {
+            bgLocations.add(BackgroundLocation.fromLocation(new Location("fake")));
+        }
+
+        try {
+            dao.persistLocations(bgLocations);
+            fail("Expected SQLException");
+        } catch (SQLException e) {
+            // expected, failure must reach the caller so it can retry
+        }
+
+        deleteDatabase();
+        for (BackgroundLocation bgLocation : bgLocations) {
+            assertNull(bgLocation.getLocationId());
+        }
+        assertEquals(0, dao.getAllLocations().size());
+    }
+
+    @Test
+    public void testJournalShouldReplayFileIntoProvider() {
+        LocationDAO dao = new ContentProviderLocationDAO(getContext());
+        File journalFile = new File(getContext().getCacheDir(), "test-location.journal");
+        journalFile.delete();
+
+        // previous process, killed before its flush window closed
+        LocationJournal killedJournal = new LocationJournal(dao, journalFile, 100, TimeUnit.DAYS.toMillis(1));
+        BackgroundLocation syncLocation = BackgroundLocation.fromLocation(new Location("fake"));
+        BackgroundLocation deletedLocation = BackgroundLocation.fromLocation(new Location("fake"));
+        killedJournal.append(BackgroundLocation.fromLocation(new Location("fake")));
+        killedJournal.append(syncLocation);
+        killedJournal.append(deletedLocation);
+        killedJournal.setStatus(syncLocation, BackgroundLocation.SYNC_PENDING);
+        killedJournal.setStatus(deletedLocation, BackgroundLocation.DELETED);
+        assertEquals(0, dao.getAllLocations().size());
+
+        LocationJournal journal = new LocationJournal(dao, journalFile, 100, TimeUnit.DAYS.toMillis(1));
+        journal.flush();
+
+        assertEquals(2, dao.getAllLocations().size());
+        assertEquals(1, dao.getUnpostedLocationsCount());
+        assertEquals(1, dao.getLocationsForSyncCount(0));
+        assertFalse(journalFile.exists());
+        journal.shutdown();
+    }
+
+    @Test
+    public void testUpdateAndDeleteLocationsById() {
+        LocationDAO dao = new ContentProviderLocationDAO(getContext());
+
+        ArrayList<Long> syncIds = new ArrayList<Long>();
+        ArrayList<Long> deleteIds = new ArrayList<Long>();
+        for (int i = 0; i < 10; i++) {
+            Long locationId = dao.persistLocation(BackgroundLocation.fromLocation(new Location("fake")));
+            if (i % 2 == 0) {
+                syncIds.add(locationId);
+            } else {
+                deleteIds.add(locationId);
+            }
+        }
+
+        assertEquals(5, dao.updateLocationsForSync(syncIds));
+        assertEquals(5, dao.deleteLocationsById(deleteIds));
+
+        Collection<BackgroundLocation> locations = dao.getValidLocations();
+        assertEquals(5, locations.size());
+        for (BackgroundLocation location : locations) {
+            assertEquals(BackgroundLocation.SYNC_PENDING, location.getStatus());
+        }
+    }
+
     @Test
     public void testDeleteAllLocations() {
         LocationDAO dao = new ContentProviderLocationDAO(getContext());
@@ -208,6 +314,51 @@ public class ContentProviderLocationDAOTest extends LocationProviderTestCase {
         assertEquals(locationId, Long.valueOf(101));
     }
 
+    @Test
+    public void testPersistLocationWithRowLimitShouldNotReplacePendingLocation() {
+        LocationDAO dao = new ContentProviderLocationDAO(getContext());
+
+        int maxRows = 3;
+        long pendingId = dao.persistLocation(BackgroundLocation.fromLocation(new Location("pending")), maxRows);
+        for (int i = 1; i < maxRows; i++) {
+            long postedId = dao.persistLocation(BackgroundLocation.fromLocation(new Location("posted")), maxRows);
+            dao.deleteLocationById(postedId);
+        }
+        dao.persistLocation(BackgroundLocation.fromLocation(new Location("new")), maxRows);
+
+        assertEquals(2, dao.getAllLocations().size());
+        assertEquals("pending", dao.getLocationById(pendingId).getProvider());
+    }
+
+    @Test
+    public void testPersistLocationWithRowLimitWhenMaxRowsReducedShouldKeepPendingLocations() {
+        LocationDAO dao = new ContentProviderLocationDAO(getContext());
+
+        String[] providers = {"a", "b", "c", "d"};
+        int[] statuses = {
+                BackgroundLocation.POST_PENDING,
+                BackgroundLocation.DELETED,
+                BackgroundLocation.DELETED,
+                BackgroundLocation.SYNC_PENDING
+        };
+        for (int i = 0; i < providers.length; i++) {
+            BackgroundLocation location = BackgroundLocation.fromLocation(new Location(providers[i]));
+            location.setStatus(statuses[i]);
+            dao.persistLocation(location, providers.length);
+        }
+        // "b" is dropped when ring is compacted, "c" is the oldest handled location left
+        dao.persistLocation(BackgroundLocation.fromLocation(new Location("e")), 3);
+
+        ArrayList<String> stored = new ArrayList<String>();
+        for (BackgroundLocation location : dao.getAllLocations()) {
+            stored.add(location.getProvider());
+        }
+        assertEquals(3, stored.size());
+        assertTrue(stored.contains("a"));
+        assertTrue(stored.contains("d"));
+        assertTrue(stored.contains("e"));
+    }
+
     @Test
     public void testPersistLocationWithBatchId() {
         LocationDAO dao = new ContentProviderLocationDAO(getContext());
@@ -1,5 +1,6 @@
 package com.marianhello.bgloc;
 
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
@@ -20,6 +21,7 @@ import org.junit.Test;
 import java.util.ArrayList;
 
 import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry.SQL_DROP_LOCATION_TABLE;
+import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationSlotEntry.SQL_DROP_LOCATION_SLOT_TABLE;
 
 public class LocationContentProviderTest extends LocationProviderTestCase {
 
@@ -38,6 +40,7 @@ public class LocationContentProviderTest extends LocationProviderTestCase {
         SQLiteOpenHelper dbHelper = new SQLiteOpenHelper(context);
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         dbHelper.execAndLogSql(db, SQL_DROP_LOCATION_TABLE);
+        dbHelper.execAndLogSql(db, SQL_DROP_LOCATION_SLOT_TABLE);
         dbHelper.onCreate(db);
     }
 
@@ -153,6 +156,23 @@ public class LocationContentProviderTest extends LocationProviderTestCase {
         assertEquals("new test", cursor.getString(cursor.getColumnIndex(LocationEntry.COLUMN_NAME_PROVIDER)));
     }
 
+    @Test
+    public void testShouldBulkInsertLocations() {
+        ContentValues[] values = new ContentValues[10];
+        for (int i = 0; i < values.length; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setProvider("test");
+            location.setTime(1000 + i);
+            values[i] = location.toContentValues();
+        }
+
+        assertEquals(10, mResolver.bulkInsert(mContentUri, values));
+
+        Cursor cursor = mResolver.query(mContentUri, null, null, null,null);
+        assertEquals(10, cursor.getCount());
+        cursor.close();
+    }
+
     private Uri createLocation(BackgroundLocation location) {
         return mResolver.insert(mContentUri, location.toContentValues());
     }
@@ -251,6 +251,34 @@ public class SQLiteLocationDAOTest {
         Assert.assertEquals(33L, dao.getLocationsForSyncCount(1000L));
     }
 
+    @Test
+    public void getLocationsForSync() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
+        SQLiteLocationDAO dao = new SQLiteLocationDAO(db);
+
+        BackgroundLocation location;
+        for (int i = 1; i < 100; i++) {
+            location = new BackgroundLocation();
+            location.setStatus((i % 3) == 0 ? BackgroundLocation.POST_PENDING : BackgroundLocation.SYNC_PENDING);
+            dao.persistLocation(location);
+        }
+
+        long fromId = 0;
+        int count = 0;
+        Collection<BackgroundLocation> page;
+        while (!(page = dao.getLocationsForSync(fromId, 10)).isEmpty()) {
+            Assert.assertTrue(page.size() <= 10);
+            for (BackgroundLocation pageLocation : page) {
+                Assert.assertEquals(BackgroundLocation.SYNC_PENDING, pageLocation.getStatus());
+                Assert.assertTrue(pageLocation.getLocationId() > fromId);
+                fromId = pageLocation.getLocationId();
+                count++;
+            }
+        }
+        Assert.assertEquals(66, count);
+    }
+
     @Test
     public void getLocationById() {
         Context ctx = InstrumentationRegistry.getTargetContext();
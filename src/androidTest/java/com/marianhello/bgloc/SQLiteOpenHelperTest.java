@@ -3,6 +3,7 @@ package com.marianhello.bgloc;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.location.Location;
 import android.support.test.InstrumentationRegistry;
@@ -222,4 +223,18 @@ public class SQLiteOpenHelperTest {
 //            Assert.fail(e.getMessage());
 //        }
     }
+
+    @Test
+    public void openDatabaseWithDefaultStorageProfile() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        SQLiteDatabase db = new SQLiteOpenHelper(ctx).getWritableDatabase();
+
+        Assert.assertTrue(db.isWriteAheadLoggingEnabled());
+        Assert.assertEquals("wal", DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode", null).toLowerCase());
+        // NORMAL
+        Assert.assertEquals(1, DatabaseUtils.longForQuery(db, "PRAGMA synchronous", null));
+        // INCREMENTAL
+        Assert.assertEquals(2, DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null));
+        db.close();
+    }
 }
@@ -0,0 +1,179 @@
+package com.marianhello.bgloc;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.SmallTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.TextUtils;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationDAO;
+import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
+import com.marianhello.bgloc.sqlite.SQLiteOpenHelper10;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Asserts that hot location queries are served by index and never fall back to full table scan
+ *
+ * Queries are built from selections shared with SQLiteLocationDAO and BatchManager
+ * (see SQLiteLocationContract.LocationEntry) the same way SQLiteDatabase builds them.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class SQLiteQueryPlanTest {
+    private static final String POST_PENDING = String.valueOf(BackgroundLocation.POST_PENDING);
+    private static final String SYNC_PENDING = String.valueOf(BackgroundLocation.SYNC_PENDING);
+
+    private SQLiteOpenHelper helper;
+
+    @Before
+    public void setUp() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        SQLiteOpenHelper.getHelper(ctx).close();
+        ctx.deleteDatabase(SQLiteOpenHelper.SQLITE_DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        if (helper != null) {
+            helper.close();
+        }
+    }
+
+    private SQLiteDatabase openDatabase() {
+        helper = new SQLiteOpenHelper(InstrumentationRegistry.getTargetContext());
+        return helper.getWritableDatabase();
+    }
+
+    private static List<String> explainQueryPlan(SQLiteDatabase db, String sql, String[] args) {
+        List<String> details = new ArrayList<String>();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detailIdx = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                details.add(cursor.getString(detailIdx));
+            }
+        } finally {
+            cursor.close();
+        }
+        return details;
+    }
+
+    private static void assertUsesIndex(SQLiteDatabase db, String sql, String... args) {
+        List<String> details = explainQueryPlan(db, sql, args);
+        String plan = TextUtils.join("\n", details);
+        for (String detail : details) {
+            // "SCAN TABLE location" on older sqlite, "SCAN location" on newer
+            Assert.assertFalse("Full table scan:\n" + plan, detail.matches("^SCAN (TABLE )?" + LocationEntry.TABLE_NAME + "\\b.*"));
+        }
+        Assert.assertTrue("No index used:\n" + plan, plan.contains("INDEX") || plan.contains("PRIMARY KEY"));
+    }
+
+    // as in DatabaseUtils.queryNumEntries
+    private static String count(String selection) {
+        return "select count(*) from " + LocationEntry.TABLE_NAME + " where " + selection;
+    }
+
+    // as in SQLiteDatabase.query
+    private static String select(String selection, String orderBy, String limit) {
+        return SQLiteQueryBuilder.buildQueryString(false, LocationEntry.TABLE_NAME, LocationEntry.PROJECTION_ALL,
+                selection, null, null, orderBy, limit);
+    }
+
+    // as in SQLiteDatabase.update
+    private static String update(String column, String selection) {
+        return "UPDATE " + LocationEntry.TABLE_NAME + " SET " + column + "=? WHERE " + selection;
+    }
+
+    @Test
+    public void getLocationsForSyncCountUsesIndex() {
+        SQLiteDatabase db = openDatabase();
+
+        assertUsesIndex(db, count(LocationEntry.SQL_WHERE_STATUS_BEFORE_BATCH), SYNC_PENDING, "1000");
+    }
+
+    @Test
+    public void getLocationsForSyncUsesIndex() {
+        SQLiteDatabase db = openDatabase();
+
+        assertUsesIndex(db, select(LocationEntry.SQL_WHERE_STATUS_AFTER_ID, LocationEntry._ID + " ASC", "500"),
+                SYNC_PENDING, "0");
+    }
+
+    @Test
+    public void createBatchUsesIndex() {
+        SQLiteDatabase db = openDatabase();
+
+        // page query
+        assertUsesIndex(db, select(LocationEntry.SQL_WHERE_STATUS_BEFORE_BATCH + " AND " + LocationEntry._ID + " > ?",
+                LocationEntry._ID + " ASC", "500"), SYNC_PENDING, "1000", "0");
+        // batch assignment
+        assertUsesIndex(db, update(LocationEntry.COLUMN_NAME_BATCH_START_MILLIS,
+                LocationEntry.SQL_WHERE_STATUS_BEFORE_BATCH + " AND " + LocationEntry._ID + " <= ?"),
+                "1000", SYNC_PENDING, "1000", "500");
+    }
+
+    @Test
+    public void setBatchCompletedUsesIndex() {
+        SQLiteDatabase db = openDatabase();
+
+        assertUsesIndex(db, update(LocationEntry.COLUMN_NAME_STATUS, LocationEntry.SQL_WHERE_BATCH_START),
+                String.valueOf(BackgroundLocation.DELETED), "1000");
+    }
+
+    @Test
+    public void getUnpostedLocationsCountUsesIndex() {
+        SQLiteDatabase db = openDatabase();
+
+        assertUsesIndex(db, count(LocationEntry.SQL_WHERE_STATUS), POST_PENDING);
+    }
+
+    @Test
+    public void getFirstUnpostedLocationUsesIndex() {
+        SQLiteDatabase db = openDatabase();
+
+        assertUsesIndex(db, SQLiteLocationDAO.buildUnpostedLocationQuery(LocationEntry.PROJECTION_ALL, null));
+    }
+
+    @Test
+    public void getNextUnpostedLocationUsesIndex() {
+        SQLiteDatabase db = openDatabase();
+
+        assertUsesIndex(db, SQLiteLocationDAO.buildUnpostedLocationQuery(LocationEntry.PROJECTION_ALL, 1L));
+    }
+
+    @Test
+    public void deleteUnpostedLocationsUsesIndex() {
+        SQLiteDatabase db = openDatabase();
+
+        assertUsesIndex(db, update(LocationEntry.COLUMN_NAME_STATUS, LocationEntry.SQL_WHERE_STATUS),
+                SYNC_PENDING, POST_PENDING);
+    }
+
+    @Test
+    public void upgradedDatabaseUsesIndex() {
+        Context ctx = InstrumentationRegistry.getTargetContext();
+        SQLiteOpenHelper10 oldHelper = new SQLiteOpenHelper10(ctx);
+        oldHelper.getWritableDatabase();
+        oldHelper.close();
+        SQLiteDatabase db = openDatabase();
+
+        assertUsesIndex(db, count(LocationEntry.SQL_WHERE_STATUS_BEFORE_BATCH), SYNC_PENDING, "1000");
+        assertUsesIndex(db, count(LocationEntry.SQL_WHERE_STATUS), POST_PENDING);
+        assertUsesIndex(db, select(LocationEntry.SQL_WHERE_STATUS_AFTER_ID, LocationEntry._ID + " ASC", "500"),
+                SYNC_PENDING, "0");
+    }
+}
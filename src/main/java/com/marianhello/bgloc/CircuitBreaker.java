@@ -0,0 +1,112 @@
+package com.marianhello.bgloc;
+
+import java.util.Random;
+
+/**
+ * Circuit breaker guarding location posting
+ *
+ * Circuit opens after failureThreshold consecutive failures. While open, no request
+ * is allowed until backoff elapses. Then single probe request is allowed (half-open).
+ * Successful probe closes circuit, failed probe opens it again with doubled backoff.
+ * Backoff is jittered, so clients do not probe recovering server all at once.
+ *
+ * Time is passed in by caller as monotonic milliseconds (eg. SystemClock.elapsedRealtime).
+ */
+public class CircuitBreaker {
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_BASE_BACKOFF_MILLIS = 10000;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 10 * 60 * 1000;
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int mFailureThreshold;
+    private final long mBaseBackoffMillis;
+    private final long mMaxBackoffMillis;
+    private final Random mRandom;
+
+    private State mState = State.CLOSED;
+    private int mConsecutiveFailures = 0;
+    private int mOpenCount = 0;
+    private long mRetryAt = 0;
+
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_BASE_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS, new Random());
+    }
+
+    public CircuitBreaker(int failureThreshold, long baseBackoffMillis, long maxBackoffMillis, Random random) {
+        mFailureThreshold = failureThreshold;
+        mBaseBackoffMillis = baseBackoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+        mRandom = random;
+    }
+
+    /**
+     * Returns true if request can be made
+     *
+     * When backoff of open circuit elapsed, circuit turns half-open and stays
+     * half-open until outcome of probe request is reported.
+     * Half-open circuit does not limit number of probes, so concurrent callers
+     * (eg. real-time and backlog posts) can each make one.
+     * @param now current time in millis
+     */
+    public synchronized boolean allowRequest(long now) {
+        if (mState == State.OPEN) {
+            if (now < mRetryAt) {
+                return false;
+            }
+            mState = State.HALF_OPEN;
+        }
+        return true;
+    }
+
+    /**
+     * Report successful request
+     * @return true if circuit was closed by this success (server recovered)
+     */
+    public synchronized boolean onSuccess() {
+        boolean recovered = mState != State.CLOSED;
+        mState = State.CLOSED;
+        mConsecutiveFailures = 0;
+        mOpenCount = 0;
+        return recovered;
+    }
+
+    /**
+     * Report failed request
+     * @param now current time in millis
+     * @return true if circuit was opened by this failure (caller may schedule probe)
+     */
+    public synchronized boolean onFailure(long now) {
+        mConsecutiveFailures++;
+        if (mState == State.HALF_OPEN || mConsecutiveFailures >= mFailureThreshold) {
+            open(now);
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized State getState() {
+        return mState;
+    }
+
+    /**
+     * Returns millis until probe request is allowed or 0 if circuit is not open
+     * @param now current time in millis
+     */
+    public synchronized long getRetryDelay(long now) {
+        return mState == State.OPEN ? Math.max(0, mRetryAt - now) : 0;
+    }
+
+    private void open(long now) {
+        mState = State.OPEN;
+        mOpenCount++;
+
+        long backoff = mMaxBackoffMillis;
+        if (mOpenCount <= 31) {
+            backoff = Math.min(mMaxBackoffMillis, mBaseBackoffMillis << (mOpenCount - 1));
+        }
+        // equal jitter: half of backoff is fixed, other half is random
+        long half = backoff / 2;
+        mRetryAt = now + half + (half > 0 ? (long) (mRandom.nextDouble() * half) : 0);
+    }
+}
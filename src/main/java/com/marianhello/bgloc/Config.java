@@ -15,6 +15,7 @@ import android.os.Parcelable;
 import android.support.annotation.Nullable;
 
 import com.marianhello.bgloc.data.AbstractLocationTemplate;
+import com.marianhello.bgloc.data.LocationEncoderFactory;
 import com.marianhello.bgloc.data.LocationTemplate;
 import com.marianhello.bgloc.data.LocationTemplateFactory;
 import com.marianhello.utils.CloneHelper;
@@ -60,6 +61,15 @@ public class Config implements Parcelable
     private String url;
     private String syncUrl;
     private Integer syncThreshold;
+    private Integer syncBatchSize;
+    private Boolean httpCompression;
+    private Integer postBatchSize;
+    private Integer postBatchDelay;
+    private Integer postBacklogBudget;
+    private String payloadFormat;
+    private Boolean locationFilterEnabled;
+    private Float simplifyTolerance;
+    private Integer simplifyMaxDelay;
     private HashMap httpHeaders;
     private Integer maxLocations;
     private LocationTemplate template;
@@ -90,6 +100,15 @@ public class Config implements Parcelable
         this.url = config.url;
         this.syncUrl = config.syncUrl;
         this.syncThreshold = config.syncThreshold;
+        this.syncBatchSize = config.syncBatchSize;
+        this.httpCompression = config.httpCompression;
+        this.postBatchSize = config.postBatchSize;
+        this.postBatchDelay = config.postBatchDelay;
+        this.postBacklogBudget = config.postBacklogBudget;
+        this.payloadFormat = config.payloadFormat;
+        this.locationFilterEnabled = config.locationFilterEnabled;
+        this.simplifyTolerance = config.simplifyTolerance;
+        this.simplifyMaxDelay = config.simplifyMaxDelay;
         this.httpHeaders = CloneHelper.deepCopy(config.httpHeaders);
         this.maxLocations = config.maxLocations;
         if (config.template instanceof AbstractLocationTemplate) {
@@ -120,6 +139,15 @@ public class Config implements Parcelable
         setSyncUrl(in.readString());
         setSyncThreshold(in.readInt());
         setMaxLocations(in.readInt());
+        setSyncBatchSize(in.readInt());
+        setHttpCompression((Boolean) in.readValue(null));
+        setPostBatchSize(in.readInt());
+        setPostBatchDelay(in.readInt());
+        setPostBacklogBudget(in.readInt());
+        setPayloadFormat(in.readString());
+        setLocationFilterEnabled((Boolean) in.readValue(null));
+        setSimplifyTolerance((Float) in.readValue(null));
+        setSimplifyMaxDelay(in.readInt());
         Bundle bundle = in.readBundle();
         setHttpHeaders((HashMap<String, String>) bundle.getSerializable("httpHeaders"));
         setTemplate((LocationTemplate) bundle.getSerializable(AbstractLocationTemplate.BUNDLE_KEY));
@@ -151,6 +179,15 @@ public class Config implements Parcelable
         config.httpHeaders = null;
         config.maxLocations = 10000;
         config.template = null;
+        config.syncBatchSize = 1000;
+        config.httpCompression = false;
+        config.postBatchSize = 1;
+        config.postBatchDelay = 0;
+        config.postBacklogBudget = 256 * 1024;
+        config.payloadFormat = LocationEncoderFactory.FORMAT_JSON;
+        config.locationFilterEnabled = false;
+        config.simplifyTolerance = 0f;
+        config.simplifyMaxDelay = 30000;
 
         return config;
     }
@@ -183,6 +220,15 @@ public class Config implements Parcelable
         out.writeString(getSyncUrl());
         out.writeInt(getSyncThreshold());
         out.writeInt(getMaxLocations());
+        out.writeInt(getSyncBatchSize());
+        out.writeValue(getHttpCompression());
+        out.writeInt(getPostBatchSize());
+        out.writeInt(getPostBatchDelay());
+        out.writeInt(getPostBacklogBudget());
+        out.writeString(getPayloadFormat());
+        out.writeValue(getLocationFilterEnabled());
+        out.writeValue(getSimplifyTolerance());
+        out.writeInt(getSimplifyMaxDelay());
         Bundle bundle = new Bundle();
         bundle.putSerializable("httpHeaders", getHttpHeaders());
         bundle.putSerializable(AbstractLocationTemplate.BUNDLE_KEY, (AbstractLocationTemplate) getTemplate());
@@ -463,6 +509,114 @@ public class Config implements Parcelable
         this.syncThreshold = syncThreshold;
     }
 
+    public boolean hasSyncBatchSize() {
+        return syncBatchSize != null;
+    }
+
+    public Integer getSyncBatchSize() {
+        return syncBatchSize;
+    }
+
+    public void setSyncBatchSize(Integer syncBatchSize) {
+        this.syncBatchSize = syncBatchSize;
+    }
+
+    public boolean hasHttpCompression() {
+        return httpCompression != null;
+    }
+
+    public Boolean getHttpCompression() {
+        return httpCompression;
+    }
+
+    public void setHttpCompression(Boolean httpCompression) {
+        this.httpCompression = httpCompression;
+    }
+
+    public boolean hasPostBatchSize() {
+        return postBatchSize != null;
+    }
+
+    public Integer getPostBatchSize() {
+        return postBatchSize;
+    }
+
+    public void setPostBatchSize(Integer postBatchSize) {
+        this.postBatchSize = postBatchSize;
+    }
+
+    public boolean hasPostBatchDelay() {
+        return postBatchDelay != null;
+    }
+
+    public Integer getPostBatchDelay() {
+        return postBatchDelay;
+    }
+
+    public void setPostBatchDelay(Integer postBatchDelay) {
+        this.postBatchDelay = postBatchDelay;
+    }
+
+    public boolean hasPostBacklogBudget() {
+        return postBacklogBudget != null;
+    }
+
+    public Integer getPostBacklogBudget() {
+        return postBacklogBudget;
+    }
+
+    public void setPostBacklogBudget(Integer postBacklogBudget) {
+        this.postBacklogBudget = postBacklogBudget;
+    }
+
+    public boolean hasPayloadFormat() {
+        return payloadFormat != null;
+    }
+
+    public String getPayloadFormat() {
+        return payloadFormat;
+    }
+
+    public void setPayloadFormat(String payloadFormat) {
+        this.payloadFormat = payloadFormat;
+    }
+
+    public boolean hasLocationFilterEnabled() {
+        return locationFilterEnabled != null;
+    }
+
+    public Boolean getLocationFilterEnabled() {
+        return locationFilterEnabled;
+    }
+
+    public void setLocationFilterEnabled(Boolean locationFilterEnabled) {
+        this.locationFilterEnabled = locationFilterEnabled;
+    }
+
+    public boolean hasSimplifyTolerance() {
+        return simplifyTolerance != null;
+    }
+
+    public Float getSimplifyTolerance() {
+        return simplifyTolerance;
+    }
+
+    public void setSimplifyTolerance(Float simplifyTolerance) {
+        this.simplifyTolerance = simplifyTolerance;
+    }
+
+    public boolean hasSimplifyMaxDelay() {
+        return simplifyMaxDelay != null;
+    }
+
+    public Integer getSimplifyMaxDelay() {
+        return simplifyMaxDelay;
+    }
+
+    public void setSimplifyMaxDelay(Integer simplifyMaxDelay) {
+        this.simplifyMaxDelay = simplifyMaxDelay;
+    }
+
     public boolean hasHttpHeaders() {
         return httpHeaders != null;
     }
@@ -546,6 +700,15 @@ public class Config implements Parcelable
                 .append(" syncThreshold=").append(getSyncThreshold())
                 .append(" httpHeaders=").append(getHttpHeaders().toString())
                 .append(" maxLocations=").append(getMaxLocations())
+                .append(" syncBatchSize=").append(getSyncBatchSize())
+                .append(" httpCompression=").append(getHttpCompression())
+                .append(" postBatchSize=").append(getPostBatchSize())
+                .append(" postBatchDelay=").append(getPostBatchDelay())
+                .append(" postBacklogBudget=").append(getPostBacklogBudget())
+                .append(" payloadFormat=").append(getPayloadFormat())
+                .append(" locationFilterEnabled=").append(getLocationFilterEnabled())
+                .append(" simplifyTolerance=").append(getSimplifyTolerance())
+                .append(" simplifyMaxDelay=").append(getSimplifyMaxDelay())
                 .append(" postTemplate=").append(hasTemplate() ? getTemplate().toString() : null)
                 .append("]")
                 .toString();
@@ -639,6 +802,33 @@ public class Config implements Parcelable
         if (config2.hasTemplate()) {
             merger.setTemplate(config2.getTemplate());
         }
+        if (config2.hasSyncBatchSize()) {
+            merger.setSyncBatchSize(config2.getSyncBatchSize());
+        }
+        if (config2.hasHttpCompression()) {
+            merger.setHttpCompression(config2.getHttpCompression());
+        }
+        if (config2.hasPostBatchSize()) {
+            merger.setPostBatchSize(config2.getPostBatchSize());
+        }
+        if (config2.hasPostBatchDelay()) {
+            merger.setPostBatchDelay(config2.getPostBatchDelay());
+        }
+        if (config2.hasPostBacklogBudget()) {
+            merger.setPostBacklogBudget(config2.getPostBacklogBudget());
+        }
+        if (config2.hasPayloadFormat()) {
+            merger.setPayloadFormat(config2.getPayloadFormat());
+        }
+        if (config2.hasLocationFilterEnabled()) {
+            merger.setLocationFilterEnabled(config2.getLocationFilterEnabled());
+        }
+        if (config2.hasSimplifyTolerance()) {
+            merger.setSimplifyTolerance(config2.getSimplifyTolerance());
+        }
+        if (config2.hasSimplifyMaxDelay()) {
+            merger.setSimplifyMaxDelay(config2.getSimplifyMaxDelay());
+        }
 
         return merger;
     }
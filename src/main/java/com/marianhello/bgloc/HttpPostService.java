@@ -1,29 +1,54 @@
 package com.marianhello.bgloc;
 
 import android.os.Build;
+import android.os.SystemClock;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Iterator;
+import java.util.zip.GZIPOutputStream;
 
 import java.net.URL;
 import java.net.HttpURLConnection;
-import java.io.OutputStreamWriter;
 
+/**
+ * JSON over HTTP POST client
+ *
+ * Instance created with url can be reused for any number of requests. Every request
+ * obtains connection from platform connection pool and response is always fully consumed,
+ * so underlying keep-alive connection is returned to the pool and reused by next request.
+ */
 public class HttpPostService {
-    public static final int BUFFER_SIZE = 1024;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    /**
+     * @deprecated use {@link #DEFAULT_BUFFER_SIZE} or {@link #setBufferSize(int)}
+     */
+    @Deprecated
+    public static final int BUFFER_SIZE = DEFAULT_BUFFER_SIZE;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30000;
+    public static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 0;
+    public static final long SYNC_PROGRESS_INTERVAL_MILLIS = 500;
+    public static final String CONTENT_ENCODING_GZIP = "gzip";
+    public static final String CONTENT_TYPE_JSON = "application/json";
 
     private String mUrl;
+    private URL mURL;
     private HttpURLConnection mHttpURLConnection;
+    private int mConnectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private int mReadTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+    private boolean mCompressionEnabled = false;
+    private int mBufferSize = DEFAULT_BUFFER_SIZE;
+    private long mProgressIntervalMillis = DEFAULT_PROGRESS_INTERVAL_MILLIS;
 
     public interface UploadingProgressListener {
         void onProgress(int progress);
@@ -37,11 +62,84 @@ public class HttpPostService {
         mHttpURLConnection = httpURLConnection;
     }
 
+    /**
+     * Enable gzip compression of JSON and byte request bodies
+     *
+     * Does not apply to files and streams, which are sent as they are
+     * (see isCompressed parameter of postFile).
+     * @param compressionEnabled
+     */
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        mCompressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * Set size of buffer used to copy file into request body
+     * @param bufferSize buffer size in bytes
+     */
+    public void setBufferSize(int bufferSize) {
+        mBufferSize = bufferSize;
+    }
+
+    /**
+     * Set minimal interval between two upload progress callbacks
+     *
+     * Progress is always reported only when percentage changes. With non zero interval
+     * it is also reported not more often than once per interval. Completion (100%) is always reported.
+     * @param progressIntervalMillis interval in milliseconds or 0 (default) to report every percentage change
+     */
+    public void setProgressInterval(long progressIntervalMillis) {
+        mProgressIntervalMillis = progressIntervalMillis;
+    }
+
+    /**
+     * Set connect and read timeouts of subsequent requests
+     * @param connectTimeoutMillis
+     * @param readTimeoutMillis
+     */
+    public void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
     private HttpURLConnection openConnection() throws IOException {
-        if (mHttpURLConnection == null) {
-            mHttpURLConnection = (HttpURLConnection) new URL(mUrl).openConnection();
+        if (mHttpURLConnection != null) {
+            return mHttpURLConnection;
+        }
+        if (mURL == null) {
+            mURL = new URL(mUrl);
         }
-        return mHttpURLConnection;
+        HttpURLConnection conn = (HttpURLConnection) mURL.openConnection();
+        conn.setConnectTimeout(mConnectTimeoutMillis);
+        conn.setReadTimeout(mReadTimeoutMillis);
+        return conn;
+    }
+
+    /**
+     * Read response code and drain response body
+     *
+     * Connection can be reused only when response body was read till the end and closed.
+     */
+    private int readResponse(HttpURLConnection conn) throws IOException {
+        int responseCode = conn.getResponseCode();
+        try {
+            InputStream is = responseCode < HttpURLConnection.HTTP_BAD_REQUEST ? conn.getInputStream() : conn.getErrorStream();
+            if (is != null) {
+                byte[] buffer = new byte[1024];
+                while (is.read(buffer) != -1) {
+                    // discard
+                }
+                is.close();
+            }
+        } catch (IOException e) {
+            // response code is already known, connection is just not reused
+            conn.disconnect();
+        }
+        return responseCode;
     }
 
     public int postJSON(JSONObject json, Map headers) throws IOException {
@@ -63,25 +161,49 @@ public class HttpPostService {
     }
 
     public int postJSONString(String body, Map headers) throws IOException {
+        byte[] content = body.getBytes("UTF-8");
+        return postBytes(content, content.length, CONTENT_TYPE_JSON, headers);
+    }
+
+    /**
+     * Post encoded body
+     *
+     * Only first length bytes of content are sent, so caller can reuse oversized buffer.
+     * @param content encoded body
+     * @param length number of bytes of content to send
+     * @param contentType eg. application/json
+     * @param headers
+     * @return http response code
+     * @throws IOException
+     */
+    public int postBytes(byte[] content, int length, String contentType, Map headers) throws IOException {
         if (headers == null) {
             headers = new HashMap();
         }
 
+        if (mCompressionEnabled) {
+            content = gzip(content, length);
+            length = content.length;
+        }
+
         HttpURLConnection conn = this.openConnection();
         conn.setDoOutput(true);
-        conn.setFixedLengthStreamingMode(body.length());
+        conn.setFixedLengthStreamingMode(length);
         conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setRequestProperty("Content-Type", contentType);
+        if (mCompressionEnabled) {
+            conn.setRequestProperty("Content-Encoding", CONTENT_ENCODING_GZIP);
+        }
         Iterator<Map.Entry<String, String>> it = headers.entrySet().iterator();
         while (it.hasNext()) {
             Map.Entry<String, String> pair = it.next();
             conn.setRequestProperty(pair.getKey(), pair.getValue());
         }
 
-        OutputStreamWriter os = null;
+        OutputStream os = null;
         try {
-            os = new OutputStreamWriter(conn.getOutputStream());
-            os.write(body);
+            os = conn.getOutputStream();
+            os.write(content, 0, length);
 
         } finally {
             if (os != null) {
@@ -90,22 +212,44 @@ public class HttpPostService {
             }
         }
 
-        return conn.getResponseCode();
+        return readResponse(conn);
     }
 
     public int postJSONFile(File file, Map headers, UploadingProgressListener listener) throws IOException {
-        return postJSONFile(new FileInputStream(file), headers, listener);
+        return postFile(file, CONTENT_TYPE_JSON, false, headers, listener);
     }
 
     public int postJSONFile(InputStream stream, Map headers, UploadingProgressListener listener) throws IOException {
+        return postFile(stream, stream.available(), CONTENT_TYPE_JSON, false, headers, listener);
+    }
+
+    public int postFile(File file, String contentType, Map headers, UploadingProgressListener listener) throws IOException {
+        return postFile(file, contentType, false, headers, listener);
+    }
+
+    /**
+     * Post file
+     *
+     * File is sent as it is, regardless of setCompressionEnabled.
+     * @param file
+     * @param contentType eg. application/json
+     * @param isCompressed true when file content is already gzip compressed
+     * @param headers
+     * @param listener
+     * @return http response code
+     * @throws IOException
+     */
+    public int postFile(File file, String contentType, boolean isCompressed, Map headers, UploadingProgressListener listener) throws IOException {
+        return postFile(new FileInputStream(file), file.length(), contentType, isCompressed, headers, listener);
+    }
+
+    private int postFile(InputStream stream, final long streamSize, String contentType, boolean isCompressed, Map headers, UploadingProgressListener listener) throws IOException {
         if (headers == null) {
             headers = new HashMap();
         }
 
-        final long streamSize = stream.available();
         HttpURLConnection conn = this.openConnection();
 
-        conn.setDoInput(false);
         conn.setDoOutput(true);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
             conn.setFixedLengthStreamingMode(streamSize);
@@ -113,7 +257,10 @@ public class HttpPostService {
             conn.setChunkedStreamingMode(0);
         }
         conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setRequestProperty("Content-Type", contentType);
+        if (isCompressed) {
+            conn.setRequestProperty("Content-Encoding", CONTENT_ENCODING_GZIP);
+        }
         Iterator<Map.Entry<String, String>> it = headers.entrySet().iterator();
         while (it.hasNext()) {
             Map.Entry<String, String> pair = it.next();
@@ -122,20 +269,31 @@ public class HttpPostService {
 
         long progress = 0;
         int bytesRead = -1;
-        byte[] buffer = new byte[BUFFER_SIZE];
+        int lastPercentage = -1;
+        long lastProgressAt = 0;
+        byte[] buffer = new byte[mBufferSize];
 
-        BufferedInputStream is = null;
-        BufferedOutputStream os = null;
+        InputStream is = stream;
+        OutputStream os = null;
         try {
-            is = new BufferedInputStream(stream);
-            os = new BufferedOutputStream(conn.getOutputStream());
+            // buffer is large enough, so chunks are written directly to the connection
+            // and flushed only once the whole body is written
+            os = conn.getOutputStream();
             while ((bytesRead = is.read(buffer)) != -1) {
                 os.write(buffer, 0, bytesRead);
-                os.flush();
                 progress += bytesRead;
+                if (listener == null || streamSize <= 0) {
+                    continue;
+                }
                 int percentage = (int) ((progress * 100L) / streamSize);
-                if (listener != null) {
+                if (percentage == lastPercentage) {
+                    continue;
+                }
+                long now = SystemClock.elapsedRealtime();
+                if (percentage >= 100 || lastPercentage < 0 || now - lastProgressAt >= mProgressIntervalMillis) {
                     listener.onProgress(percentage);
+                    lastPercentage = percentage;
+                    lastProgressAt = now;
                 }
             }
         } finally {
@@ -143,12 +301,21 @@ public class HttpPostService {
                 os.flush();
                 os.close();
             }
-            if (is != null) {
-                is.close();
-            }
+            is.close();
         }
 
-        return conn.getResponseCode();
+        return readResponse(conn);
+    }
+
+    private static byte[] gzip(byte[] content, int length) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(length / 4);
+        GZIPOutputStream gzos = new GZIPOutputStream(bos);
+        try {
+            gzos.write(content, 0, length);
+        } finally {
+            gzos.close();
+        }
+        return bos.toByteArray();
     }
 
     public static int postJSON(String url, JSONObject json, Map headers) throws IOException {
@@ -162,7 +329,35 @@ public class HttpPostService {
     }
 
     public static int postJSONFile(String url, File file, Map headers, UploadingProgressListener listener) throws IOException {
+        return postJSONFile(url, file, false, headers, listener);
+    }
+
+    /**
+     * Post JSON file
+     *
+     * @param url
+     * @param file
+     * @param isCompressed true when file content is gzip compressed
+     * @param headers
+     * @param listener
+     */
+    public static int postJSONFile(String url, File file, boolean isCompressed, Map headers, UploadingProgressListener listener) throws IOException {
+        return postFile(url, file, CONTENT_TYPE_JSON, isCompressed, headers, listener);
+    }
+
+    /**
+     * Post file
+     *
+     * @param url
+     * @param file
+     * @param contentType eg. application/json
+     * @param isCompressed true when file content is gzip compressed
+     * @param headers
+     * @param listener called at most once per {@link #SYNC_PROGRESS_INTERVAL_MILLIS}
+     */
+    public static int postFile(String url, File file, String contentType, boolean isCompressed, Map headers, UploadingProgressListener listener) throws IOException {
         HttpPostService service = new HttpPostService(url);
-        return service.postJSONFile(file, headers, listener);
+        service.setProgressInterval(SYNC_PROGRESS_INTERVAL_MILLIS);
+        return service.postFile(file, contentType, isCompressed, headers, listener);
     }
 }
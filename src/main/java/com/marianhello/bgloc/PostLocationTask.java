@@ -1,16 +1,33 @@
 package com.marianhello.bgloc;
 
+import android.os.SystemClock;
+
 import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.CompiledLocationTemplate;
 import com.marianhello.bgloc.data.LocationDAO;
+import com.marianhello.bgloc.data.LocationEncoder;
+import com.marianhello.bgloc.data.LocationEncoderFactory;
+import com.marianhello.bgloc.data.LocationJournal;
+import com.marianhello.bgloc.data.LocationTemplate;
+import com.marianhello.bgloc.data.LocationTemplateFactory;
 import com.marianhello.logging.LoggerManager;
 
-import org.json.JSONArray;
-import org.json.JSONException;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Location task to post/sync locations from location providers
@@ -26,16 +43,65 @@ import java.util.concurrent.TimeUnit;
  * If only option.syncUrl is defined, locations are send only in single batch,
  * when number of locations reaches syncTreshold.
  *
+ * Location inserts and status changes are written through LocationJournal,
+ * which group commits them once per flush window. When journalFile is given,
+ * journal operations survive process death and are replayed on next start.
+ *
+ * If option.postBatchSize is greater than 1, up to postBatchSize queued locations
+ * are posted together in one request. Poster waits up to option.postBatchDelay ms
+ * for more locations to arrive before sending incomplete batch.
+ *
+ * Number of locations waiting to be posted is bounded by maxQueueSize. When queue is full
+ * (eg. during long network stall), new locations skip the queue and are marked for sync.
+ *
+ * Posting is guarded by CircuitBreaker. After several consecutive network failures
+ * or server errors (5xx), locations are marked for sync without being posted
+ * until probe request succeeds. Pending locations are then synced in bulk.
+ * If option.syncUrl is not defined, probe is also scheduled for the moment backoff expires,
+ * by draining the backlog, so recovery does not wait for the next location.
+ *
+ * If option.syncUrl is not defined, locations marked for sync are drained through option.url
+ * instead, when connectivity returns or server recovers. Backlog is posted in pages on its own
+ * thread, so real-time locations are never queued behind backlog request, until it is empty
+ * or option.postBacklogBudget bytes were posted.
+ *
+ * If option.simplifyTolerance is greater than 0, locations pass through TrajectorySimplifier
+ * before they are recorded. Locations within simplifyTolerance metres of straight line
+ * between their neighbours are dropped. Held back location is recorded at latest
+ * after option.simplifyMaxDelay ms.
  */
 public class PostLocationTask {
+    public static final int DEFAULT_MAX_QUEUE_SIZE = 100;
+    public static final int BACKLOG_PAGE_SIZE = 100;
+
+    private static final int INITIAL_BODY_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_RETAINED_BODY_BUFFER_SIZE = 256 * 1024;
+
     private final LocationDAO mLocationDAO;
+    private final LocationJournal mJournal;
     private final PostLocationTaskListener mTaskListener;
     private final ConnectivityListener mConnectivityListener;
 
     private final ExecutorService mExecutor;
+    private final ScheduledExecutorService mBacklogExecutor;
+    private final BlockingQueue<BackgroundLocation> mPostQueue;
+    private final AtomicLong mOverflowCount = new AtomicLong(0);
+    private final CircuitBreaker mCircuitBreaker = new CircuitBreaker();
+    private final AtomicBoolean mIsDraining = new AtomicBoolean(false);
+    private final AtomicBoolean mIsProbeScheduled = new AtomicBoolean(false);
 
     private volatile boolean mHasConnectivity = true;
     private volatile Config mConfig;
+    private volatile CompiledLocationTemplate mTemplate;
+    private volatile LocationEncoder mEncoder;
+    private volatile TrajectorySimplifier mSimplifier;
+    private float mSimplifierTolerance;
+    private long mSimplifierMaxDelay;
+
+    // accessed only from executor thread
+    private final PostChannel mChannel = new PostChannel();
+    // accessed only from backlog executor thread
+    private final PostChannel mBacklogChannel = new PostChannel();
 
     private org.slf4j.Logger logger;
 
@@ -48,31 +114,115 @@ public class PostLocationTask {
 
     public PostLocationTask(LocationDAO dao, PostLocationTaskListener taskListener,
                             ConnectivityListener connectivityListener) {
+        this(dao, taskListener, connectivityListener, DEFAULT_MAX_QUEUE_SIZE);
+    }
+
+    public PostLocationTask(LocationDAO dao, PostLocationTaskListener taskListener,
+                            ConnectivityListener connectivityListener, int maxQueueSize) {
+        this(dao, null, taskListener, connectivityListener, maxQueueSize);
+    }
+
+    public PostLocationTask(LocationDAO dao, File journalFile, PostLocationTaskListener taskListener,
+                            ConnectivityListener connectivityListener) {
+        this(dao, journalFile, taskListener, connectivityListener, DEFAULT_MAX_QUEUE_SIZE);
+    }
+
+    public PostLocationTask(LocationDAO dao, File journalFile, PostLocationTaskListener taskListener,
+                            ConnectivityListener connectivityListener, int maxQueueSize) {
         logger = LoggerManager.getLogger(PostLocationTask.class);
         logger.info("Creating PostLocationTask");
 
         mLocationDAO = dao;
+        mJournal = new LocationJournal(dao, journalFile);
         mTaskListener = taskListener;
         mConnectivityListener = connectivityListener;
 
-        mExecutor = Executors.newSingleThreadExecutor();
+        mPostQueue = new LinkedBlockingQueue<BackgroundLocation>(maxQueueSize);
+        // there is at most one task per queued location plus few control tasks
+        mExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(maxQueueSize + 10));
+        // there is at most one backlog page task and one probe timer at any time
+        mBacklogExecutor = Executors.newSingleThreadScheduledExecutor();
     }
 
     public void setConfig(Config config) {
+        LocationTemplate template = config != null ? config.getTemplate() : null;
+        LocationEncoder encoder = LocationEncoderFactory.fromFormat(config != null ? config.getPayloadFormat() : null);
+        mTemplate = CompiledLocationTemplate.compile(encoder.resolveTemplate(
+                template != null ? template : LocationTemplateFactory.getDefault()));
+        mEncoder = encoder;
         mConfig = config;
+        configureSimplifier(config);
+    }
+
+    private synchronized void configureSimplifier(Config config) {
+        float tolerance = config != null && config.hasSimplifyTolerance() ? config.getSimplifyTolerance() : 0;
+        long maxDelay = config != null && config.hasSimplifyMaxDelay()
+                ? config.getSimplifyMaxDelay() : TrajectorySimplifier.DEFAULT_MAX_DELAY_MILLIS;
+
+        if (mSimplifier != null) {
+            if (mSimplifierTolerance == tolerance && mSimplifierMaxDelay == maxDelay) {
+                return;
+            }
+            // commit held location, before simplifier is replaced
+            mSimplifier.shutdown();
+            mSimplifier = null;
+        }
+
+        if (tolerance > 0) {
+            mSimplifier = new TrajectorySimplifier(tolerance, maxDelay, new TrajectorySimplifier.Listener() {
+                @Override
+                public void onCommit(BackgroundLocation location) {
+                    record(location);
+                }
+            });
+            mSimplifierTolerance = tolerance;
+            mSimplifierMaxDelay = maxDelay;
+        }
     }
 
     public void setHasConnectivity(boolean hasConnectivity) {
+        boolean hadConnectivity = mHasConnectivity;
         mHasConnectivity = hasConnectivity;
+        if (hasConnectivity && !hadConnectivity) {
+            drainBacklog();
+        }
+    }
+
+    /**
+     * Returns number of locations waiting to be posted
+     */
+    public int getQueueSize() {
+        return mPostQueue.size();
+    }
+
+    /**
+     * Returns number of locations, which skipped full queue and were marked for sync
+     */
+    public long getOverflowCount() {
+        return mOverflowCount.get();
     }
 
     public void clearQueue() {
-        mExecutor.execute(new Runnable() {
+        TrajectorySimplifier simplifier = mSimplifier;
+        if (simplifier != null) {
+            simplifier.clear();
+        }
+
+        Runnable task = new Runnable() {
             @Override
             public void run() {
+                mPostQueue.clear();
+                mJournal.flush();
                 mLocationDAO.deleteUnpostedLocations();
             }
-        });
+        };
+
+        try {
+            mExecutor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            task.run();
+        }
     }
 
     public void add(final BackgroundLocation location) {
@@ -81,18 +231,34 @@ public class PostLocationTask {
             return;
         }
 
-        long locationId = mLocationDAO.persistLocation(location);
-        location.setLocationId(locationId);
+        TrajectorySimplifier simplifier = mSimplifier;
+        if (simplifier != null) {
+            simplifier.add(location);
+        } else {
+            record(location);
+        }
+    }
+
+    private void record(final BackgroundLocation location) {
+        mJournal.append(location);
+        if (!mPostQueue.offer(location)) {
+            long overflowCount = mOverflowCount.incrementAndGet();
+            logger.debug("Post queue is full, location left for sync. Overflowed: {}", overflowCount);
+            mJournal.setStatus(location, BackgroundLocation.SYNC_PENDING);
+            return;
+        }
 
         try {
             mExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
-                    post(location);
+                    post(takeBatch());
                 }
             });
         } catch (RejectedExecutionException ex) {
-            mLocationDAO.updateLocationForSync(locationId);
+            if (mPostQueue.remove(location)) {
+                mJournal.setStatus(location, BackgroundLocation.SYNC_PENDING);
+            }
         }
     }
 
@@ -101,64 +267,296 @@ public class PostLocationTask {
     }
 
     public void shutdown(int waitSeconds) {
+        TrajectorySimplifier simplifier = mSimplifier;
+        if (simplifier != null) {
+            simplifier.shutdown();
+        }
+        // backlog stays marked for sync in db, no need to wait for drain or probe
+        mBacklogExecutor.shutdownNow();
         mExecutor.shutdown();
         try {
             if (!mExecutor.awaitTermination(waitSeconds, TimeUnit.SECONDS)) {
                 mExecutor.shutdownNow();
+                mPostQueue.clear();
+                mJournal.flush();
                 mLocationDAO.deleteUnpostedLocations();
             }
         } catch (InterruptedException e) {
             mExecutor.shutdownNow();
         }
+        mJournal.shutdown();
     }
 
-    private void post(final BackgroundLocation location) {
-        long locationId = location.getLocationId();
+    /**
+     * Take up to postBatchSize queued locations
+     *
+     * Waits at most postBatchDelay ms for batch to fill up.
+     * Returns empty list, when queue was already drained by previous task.
+     */
+    private List<BackgroundLocation> takeBatch() {
+        int maxBatchSize = mConfig.hasPostBatchSize() ? Math.max(1, mConfig.getPostBatchSize()) : 1;
+        long batchDelay = mConfig.hasPostBatchDelay() ? mConfig.getPostBatchDelay() : 0;
+        List<BackgroundLocation> batch = new ArrayList<BackgroundLocation>(maxBatchSize);
+
+        mPostQueue.drainTo(batch, maxBatchSize);
+        if (batch.isEmpty() || batch.size() >= maxBatchSize || batchDelay <= 0) {
+            return batch;
+        }
 
-        if (mHasConnectivity && mConfig.hasValidUrl()) {
-            if (postLocation(location)) {
-                mLocationDAO.deleteLocationById(locationId);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchDelay);
+        try {
+            while (batch.size() < maxBatchSize) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                BackgroundLocation location = mPostQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (location == null) {
+                    break;
+                }
+                batch.add(location);
+                mPostQueue.drainTo(batch, maxBatchSize - batch.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return batch;
+    }
+
+    private void post(final List<BackgroundLocation> locations) {
+        if (locations.isEmpty()) {
+            return;
+        }
+
+        if (mHasConnectivity && mConfig.hasValidUrl() && mCircuitBreaker.allowRequest(SystemClock.elapsedRealtime())) {
+            if (postLocations(locations)) {
+                setStatus(locations, BackgroundLocation.DELETED);
 
                 return; // if posted successfully do nothing more
             } else {
-                mLocationDAO.updateLocationForSync(locationId);
+                setStatus(locations, BackgroundLocation.SYNC_PENDING);
             }
         } else {
-            mLocationDAO.updateLocationForSync(locationId);
+            setStatus(locations, BackgroundLocation.SYNC_PENDING);
         }
 
         if (mConfig.hasValidSyncUrl()) {
-            long syncLocationsCount = mLocationDAO.getLocationsForSyncCount(System.currentTimeMillis());
+            long syncLocationsCount = mLocationDAO.getLocationsForSyncCount(System.currentTimeMillis())
+                    + mJournal.getPendingForSyncCount();
             if (syncLocationsCount >= mConfig.getSyncThreshold()) {
                 logger.debug("Attempt to sync locations: {} threshold: {}", syncLocationsCount, mConfig.getSyncThreshold());
+                // sync adapter reads locations from db
+                mJournal.flush();
                 mTaskListener.onSyncRequested();
             }
         }
     }
 
-    private boolean postLocation(BackgroundLocation location) {
-        logger.debug("Executing PostLocationTask#postLocation");
-        JSONArray jsonLocations = new JSONArray();
+    /**
+     * Start posting backlog of locations marked for sync to option.url
+     *
+     * Does nothing if option.syncUrl is defined (backlog is handled by sync adapter)
+     * or if drain is already running.
+     */
+    public void drainBacklog() {
+        Config config = mConfig;
+        if (config == null || !config.hasValidUrl() || config.hasValidSyncUrl()) {
+            return;
+        }
+        long budget = config.hasPostBacklogBudget() ? config.getPostBacklogBudget() : 0;
+        if (budget <= 0 || !mIsDraining.compareAndSet(false, true)) {
+            return;
+        }
+
+        logger.debug("Draining backlog budget: {}", budget);
+        scheduleBacklogPage(0, budget);
+    }
 
+    private void scheduleBacklogPage(final long fromId, final long budget) {
         try {
-            jsonLocations.put(mConfig.getTemplate().locationToJson(location));
-        } catch (JSONException e) {
-            logger.warn("Location to json failed: {}", location.toString());
-            return false;
+            mBacklogExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    postBacklogPage(fromId, budget);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            mIsDraining.set(false);
+        }
+    }
+
+    /**
+     * Post one page of backlog and schedule next one
+     *
+     * Runs on backlog executor thread with its own PostChannel, concurrently with
+     * real-time posts. Each page is separate task, so shutdown stops drain between pages.
+     */
+    private void postBacklogPage(long fromId, long budget) {
+        if (!mHasConnectivity || !mConfig.hasValidUrl() || mConfig.hasValidSyncUrl()
+                || !mCircuitBreaker.allowRequest(SystemClock.elapsedRealtime())) {
+            mIsDraining.set(false);
+            return;
         }
 
+        // locations marked for sync, but not yet written, have to be in db
+        mJournal.flush();
+        List<BackgroundLocation> locations = new ArrayList<BackgroundLocation>(
+                mLocationDAO.getLocationsForSync(fromId, BACKLOG_PAGE_SIZE));
+        if (locations.isEmpty()) {
+            logger.debug("Backlog drained");
+            mIsDraining.set(false);
+            return;
+        }
+
+        LocationEncoder encoder = mEncoder;
+        int length = serializeLocations(mBacklogChannel, locations, encoder);
+        if (length < 0 || !postBody(mBacklogChannel, length, encoder.getContentType())) {
+            mIsDraining.set(false);
+            return;
+        }
+        setStatus(locations, BackgroundLocation.DELETED);
+
+        long remainingBudget = budget - length;
+        if (remainingBudget <= 0) {
+            logger.debug("Backlog budget exhausted");
+            mIsDraining.set(false);
+            return;
+        }
+
+        long lastId = locations.get(locations.size() - 1).getLocationId();
+        scheduleBacklogPage(lastId, remainingBudget);
+    }
+
+    /**
+     * Schedule probe of open circuit for the moment its backoff expires
+     *
+     * Without it, circuit would be probed only with the next location, which may never
+     * come while device is stationary. Backlog page is the probe, so nothing is posted
+     * when option.syncUrl is defined (backlog is handled by sync adapter).
+     */
+    private void scheduleProbe(long delayMillis) {
+        if (!mIsProbeScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            mBacklogExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    mIsProbeScheduled.set(false);
+                    // circuit could have been opened again meanwhile, with longer backoff
+                    long retryDelay = mCircuitBreaker.getRetryDelay(SystemClock.elapsedRealtime());
+                    if (retryDelay > 0) {
+                        scheduleProbe(retryDelay);
+                    } else {
+                        drainBacklog();
+                    }
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            mIsProbeScheduled.set(false);
+        }
+    }
+
+    private void onPostFailure() {
+        long now = SystemClock.elapsedRealtime();
+        if (mCircuitBreaker.onFailure(now)) {
+            scheduleProbe(mCircuitBreaker.getRetryDelay(now));
+        }
+    }
+
+    /**
+     * Returns long-lived client, so keep-alive connections are reused between posts
+     */
+    private HttpPostService getHttpClient(PostChannel channel, String url) {
+        if (channel.httpClient == null || !url.equals(channel.httpClient.getUrl())) {
+            channel.httpClient = new HttpPostService(url);
+        }
+        return channel.httpClient;
+    }
+
+    private void setStatus(List<BackgroundLocation> locations, int status) {
+        for (BackgroundLocation location : locations) {
+            mJournal.setStatus(location, status);
+        }
+    }
+
+    private boolean postLocations(List<BackgroundLocation> locations) {
+        logger.debug("Executing PostLocationTask#postLocations count: {}", locations.size());
+        LocationEncoder encoder = mEncoder;
+        int length = serializeLocations(mChannel, locations, encoder);
+        return length >= 0 && postBody(mChannel, length, encoder.getContentType());
+    }
+
+    /**
+     * Serialize locations as array into reusable body buffer
+     *
+     * Template output is written directly by encoder of configured payload format,
+     * without intermediate JSONObjects and String. Buffer is confined to thread owning the channel.
+     * @return body length in bytes or -1 when serialization failed
+     */
+    private int serializeLocations(PostChannel channel, List<BackgroundLocation> locations, LocationEncoder encoder) {
+        CompiledLocationTemplate template = mTemplate;
+        if (channel.bodyBuffer.capacity() > MAX_RETAINED_BODY_BUFFER_SIZE) {
+            // do not hold memory of exceptionally large body forever
+            channel.bodyBuffer = new BodyBuffer(INITIAL_BODY_BUFFER_SIZE);
+        }
+        channel.bodyBuffer.reset();
+
+        BackgroundLocation location = null;
+        try {
+            LocationEncoder.Writer writer = encoder.newWriter(channel.bodyBuffer, template);
+            writer.beginArray();
+            for (int i = 0; i < locations.size(); i++) {
+                location = locations.get(i);
+                writer.write(location);
+            }
+            writer.endArray();
+            writer.flush();
+        } catch (IOException e) {
+            logger.warn("Location to json failed: {}", String.valueOf(location));
+            return -1;
+        } catch (IllegalArgumentException e) {
+            // NaN or infinite value
+            logger.warn("Location to json failed: {}", String.valueOf(location));
+            return -1;
+        }
+
+        return channel.bodyBuffer.size();
+    }
+
+    private boolean postBody(PostChannel channel, int length, String contentType) {
         String url = mConfig.getUrl();
-        logger.debug("Posting json to url: {} headers: {}", url, mConfig.getHttpHeaders());
+        logger.debug("Posting {} to url: {} headers: {}", contentType, url, mConfig.getHttpHeaders());
         int responseCode;
 
         try {
-            responseCode = HttpPostService.postJSON(url, jsonLocations, mConfig.getHttpHeaders());
+            HttpPostService client = getHttpClient(channel, url);
+            client.setCompressionEnabled(mConfig.hasHttpCompression() && mConfig.getHttpCompression());
+            responseCode = client.postBytes(channel.bodyBuffer.getBuffer(), length, contentType, mConfig.getHttpHeaders());
         } catch (Exception e) {
             mHasConnectivity = mConnectivityListener.hasConnectivity();
+            // being offline is not server failure
+            if (e instanceof IOException && mHasConnectivity) {
+                onPostFailure();
+            }
             logger.warn("Error while posting locations: {}", e.getMessage());
             return false;
         }
 
+        if (responseCode >= 500) {
+            onPostFailure();
+        } else if (mCircuitBreaker.onSuccess()) {
+            logger.info("Server recovered, requesting sync of pending locations");
+            if (mConfig.hasValidSyncUrl()) {
+                mJournal.flush();
+                mTaskListener.onSyncRequested();
+            } else {
+                drainBacklog();
+            }
+        }
+
         if (responseCode == 285) {
             // Okay, but we don't need to continue sending these
 
@@ -183,4 +581,29 @@ public class PostLocationTask {
 
         return true;
     }
+
+    /**
+     * Keep-alive client and reusable body buffer of single posting thread
+     */
+    private static class PostChannel {
+        HttpPostService httpClient;
+        BodyBuffer bodyBuffer = new BodyBuffer(INITIAL_BODY_BUFFER_SIZE);
+    }
+
+    /**
+     * ByteArrayOutputStream giving access to its buffer without copying
+     */
+    private static class BodyBuffer extends ByteArrayOutputStream {
+        BodyBuffer(int size) {
+            super(size);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
 }
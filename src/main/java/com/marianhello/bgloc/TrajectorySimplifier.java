@@ -0,0 +1,202 @@
+package com.marianhello.bgloc;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Online trajectory simplifier (opening window)
+ *
+ * Last committed location is anchor. New locations are held back as long as all held
+ * locations lie within tolerance metres of segment from anchor to newest location.
+ * When newest location breaks the corridor, previous location is shape-defining:
+ * it is committed and becomes new anchor. Held locations in between are dropped.
+ *
+ * Memory is bounded by maxWindowSize held locations. Latency is bounded by maxDelayMillis:
+ * when location is held longer, newest held location is committed by timer.
+ *
+ * Distances are measured on local equirectangular projection around anchor,
+ * which is accurate enough for tolerances of few tens of metres.
+ *
+ * Committed locations are delivered to listener in order, while holding simplifier lock.
+ */
+public class TrajectorySimplifier {
+    public static final int DEFAULT_MAX_WINDOW_SIZE = 32;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 30000;
+
+    private static final double EARTH_RADIUS = 6371009;
+
+    private final double mTolerance;
+    private final int mMaxWindowSize;
+    private final long mMaxDelayMillis;
+    private final Listener mListener;
+    private final ScheduledExecutorService mScheduler;
+
+    private final List<BackgroundLocation> mHeld;
+    private BackgroundLocation mAnchor;
+    private long mHeldSince;
+    private ScheduledFuture<?> mFlushFuture;
+    private boolean mIsShutdown = false;
+
+    public interface Listener {
+        void onCommit(BackgroundLocation location);
+    }
+
+    public TrajectorySimplifier(double tolerance, long maxDelayMillis, Listener listener) {
+        this(tolerance, DEFAULT_MAX_WINDOW_SIZE, maxDelayMillis, listener);
+    }
+
+    public TrajectorySimplifier(double tolerance, int maxWindowSize, long maxDelayMillis, Listener listener) {
+        mTolerance = tolerance;
+        mMaxWindowSize = Math.max(1, maxWindowSize);
+        mMaxDelayMillis = maxDelayMillis;
+        mListener = listener;
+        mHeld = new ArrayList<BackgroundLocation>(mMaxWindowSize);
+        mScheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    public synchronized void add(BackgroundLocation location) {
+        if (mIsShutdown || mAnchor == null || mMaxDelayMillis <= 0) {
+            commit(location);
+            return;
+        }
+
+        if (!mHeld.isEmpty()) {
+            boolean isExpired = now() - mHeldSince >= mMaxDelayMillis;
+            if (isExpired || mHeld.size() >= mMaxWindowSize || !isCorridor(location)) {
+                commitNewestHeld();
+            } else {
+                mHeld.add(location);
+                return;
+            }
+        }
+
+        mHeld.add(location);
+        mHeldSince = now();
+        scheduleFlush();
+    }
+
+    /**
+     * Commit newest held location, dropping the rest
+     */
+    public synchronized void flush() {
+        if (!mHeld.isEmpty()) {
+            commitNewestHeld();
+        }
+    }
+
+    /**
+     * Drop held locations and start new trajectory
+     */
+    public synchronized void clear() {
+        cancelFlush();
+        mHeld.clear();
+        mAnchor = null;
+    }
+
+    /**
+     * Flush held locations and stop timer.
+     * Subsequent locations are committed immediately.
+     */
+    public synchronized void shutdown() {
+        flush();
+        mIsShutdown = true;
+        mScheduler.shutdownNow();
+    }
+
+    public synchronized int getHeldCount() {
+        return mHeld.size();
+    }
+
+    private void commit(BackgroundLocation location) {
+        mAnchor = location;
+        mListener.onCommit(location);
+    }
+
+    private void commitNewestHeld() {
+        cancelFlush();
+        BackgroundLocation newest = mHeld.get(mHeld.size() - 1);
+        mHeld.clear();
+        commit(newest);
+    }
+
+    private void scheduleFlush() {
+        cancelFlush();
+        try {
+            mFlushFuture = mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    onFlushTimer();
+                }
+            }, mMaxDelayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            commitNewestHeld();
+        }
+    }
+
+    private synchronized void onFlushTimer() {
+        mFlushFuture = null;
+        if (!mHeld.isEmpty() && now() - mHeldSince >= mMaxDelayMillis) {
+            commitNewestHeld();
+        }
+    }
+
+    private void cancelFlush() {
+        if (mFlushFuture != null) {
+            mFlushFuture.cancel(false);
+            mFlushFuture = null;
+        }
+    }
+
+    /**
+     * Returns true if all held locations are within tolerance of segment anchor-location
+     */
+    private boolean isCorridor(BackgroundLocation location) {
+        double lat0 = Math.toRadians(mAnchor.getLatitude());
+        double lon0 = Math.toRadians(mAnchor.getLongitude());
+        double cosLat0 = Math.cos(lat0);
+
+        double ex = projectX(location, lon0, cosLat0);
+        double ey = projectY(location, lat0);
+        double lengthSq = ex * ex + ey * ey;
+        double toleranceSq = mTolerance * mTolerance;
+
+        for (BackgroundLocation held : mHeld) {
+            double px = projectX(held, lon0, cosLat0);
+            double py = projectY(held, lat0);
+            double t = lengthSq > 0 ? (px * ex + py * ey) / lengthSq : 0;
+            t = Math.max(0, Math.min(1, t));
+            double dx = px - t * ex;
+            double dy = py - t * ey;
+            if (dx * dx + dy * dy > toleranceSq) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static double projectX(BackgroundLocation location, double lon0, double cosLat0) {
+        double dLon = Math.toRadians(location.getLongitude()) - lon0;
+        if (dLon > Math.PI) {
+            dLon -= 2 * Math.PI;
+        } else if (dLon < -Math.PI) {
+            dLon += 2 * Math.PI;
+        }
+        return dLon * cosLat0 * EARTH_RADIUS;
+    }
+
+    private static double projectY(BackgroundLocation location, double lat0) {
+        return (Math.toRadians(location.getLatitude()) - lat0) * EARTH_RADIUS;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
@@ -15,6 +15,10 @@ import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 public class BackgroundLocation implements Parcelable {
     public static final int DELETED = 0;
     public static final int POST_PENDING = 1;
@@ -105,6 +109,33 @@ public class BackgroundLocation implements Parcelable {
         extras = (l.extras == null) ? null : new Bundle(l.extras);
     }
 
+    /**
+     * Clears contents of the location
+     */
+    public void reset() {
+        locationId = null;
+        locationProvider = null;
+        batchStartMillis = null;
+        provider = null;
+        latitude = 0.0;
+        longitude = 0.0;
+        time = 0;
+        elapsedRealtimeNanos = 0;
+        accuracy = 0.0f;
+        speed = 0.0f;
+        bearing = 0.0f;
+        altitude = 0.0f;
+        radius = 0.0f;
+        hasAccuracy = false;
+        hasAltitude = false;
+        hasSpeed = false;
+        hasBearing = false;
+        hasRadius = false;
+        mockFlags = 0x0000;
+        status = POST_PENDING;
+        extras = null;
+    }
+
     private static BackgroundLocation fromParcel(Parcel in) {
         BackgroundLocation l = new BackgroundLocation();
 
@@ -166,34 +197,7 @@ public class BackgroundLocation implements Parcelable {
      * @return the note
      */
     public static BackgroundLocation fromCursor(Cursor c) {
-        BackgroundLocation l = new BackgroundLocation();
-
-        l.setProvider(c.getString(c.getColumnIndex(LocationEntry.COLUMN_NAME_PROVIDER)));
-        l.setTime(c.getLong(c.getColumnIndex(LocationEntry.COLUMN_NAME_TIME)));
-        if (c.getInt(c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_ACCURACY)) == 1) {
-            l.setAccuracy(c.getFloat(c.getColumnIndex(LocationEntry.COLUMN_NAME_ACCURACY)));
-        }
-        if (c.getInt(c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_SPEED)) == 1) {
-            l.setSpeed(c.getFloat(c.getColumnIndex(LocationEntry.COLUMN_NAME_SPEED)));
-        }
-        if (c.getInt(c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_BEARING)) == 1) {
-            l.setBearing(c.getFloat(c.getColumnIndex(LocationEntry.COLUMN_NAME_BEARING)));
-        }
-        if (c.getInt(c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_ALTITUDE)) == 1) {
-            l.setAltitude(c.getDouble(c.getColumnIndex(LocationEntry.COLUMN_NAME_ALTITUDE)));
-        }
-        if (c.getInt(c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_RADIUS)) == 1) {
-            l.setRadius(c.getFloat(c.getColumnIndex(LocationEntry.COLUMN_NAME_RADIUS)));
-        }
-        l.setLatitude(c.getDouble(c.getColumnIndex(LocationEntry.COLUMN_NAME_LATITUDE)));
-        l.setLongitude(c.getDouble(c.getColumnIndex(LocationEntry.COLUMN_NAME_LONGITUDE)));
-        l.setLocationProvider(c.getInt(c.getColumnIndex(LocationEntry.COLUMN_NAME_LOCATION_PROVIDER)));
-        l.setBatchStartMillis(c.getLong(c.getColumnIndex(LocationEntry.COLUMN_NAME_BATCH_START_MILLIS)));
-        l.setStatus(c.getInt(c.getColumnIndex(LocationEntry.COLUMN_NAME_STATUS)));
-        l.setLocationId(c.getLong(c.getColumnIndex(LocationEntry._ID)));
-        l.setMockFlags(c.getInt((c.getColumnIndex(LocationEntry.COLUMN_NAME_MOCK_FLAGS))));
-
-        return l;
+        return new LocationCursorReader(c).read(c);
     }
 
     @Override
@@ -236,6 +240,68 @@ public class BackgroundLocation implements Parcelable {
         }
     };
 
+    /**
+     * Write fields, which are persisted in db, in stable binary form
+     * Counterpart of {@link #readFrom(DataInput)}. Extras are not written.
+     *
+     * @param out
+     * @throws IOException
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeBoolean(provider != null);
+        if (provider != null) {
+            out.writeUTF(provider);
+        }
+        out.writeBoolean(locationProvider != null);
+        if (locationProvider != null) {
+            out.writeInt(locationProvider);
+        }
+        out.writeBoolean(batchStartMillis != null);
+        if (batchStartMillis != null) {
+            out.writeLong(batchStartMillis);
+        }
+        out.writeDouble(latitude);
+        out.writeDouble(longitude);
+        out.writeLong(time);
+        out.writeLong(elapsedRealtimeNanos);
+        out.writeFloat(accuracy);
+        out.writeFloat(speed);
+        out.writeFloat(bearing);
+        out.writeDouble(altitude);
+        out.writeFloat(radius);
+        out.writeBoolean(hasAccuracy);
+        out.writeBoolean(hasAltitude);
+        out.writeBoolean(hasSpeed);
+        out.writeBoolean(hasBearing);
+        out.writeBoolean(hasRadius);
+        out.writeInt(mockFlags);
+        out.writeInt(status);
+    }
+
+    static BackgroundLocation readFrom(DataInput in) throws IOException {
+        BackgroundLocation l = new BackgroundLocation();
+        l.provider = in.readBoolean() ? in.readUTF() : null;
+        l.locationProvider = in.readBoolean() ? in.readInt() : null;
+        l.batchStartMillis = in.readBoolean() ? in.readLong() : null;
+        l.latitude = in.readDouble();
+        l.longitude = in.readDouble();
+        l.time = in.readLong();
+        l.elapsedRealtimeNanos = in.readLong();
+        l.accuracy = in.readFloat();
+        l.speed = in.readFloat();
+        l.bearing = in.readFloat();
+        l.altitude = in.readDouble();
+        l.radius = in.readFloat();
+        l.hasAccuracy = in.readBoolean();
+        l.hasAltitude = in.readBoolean();
+        l.hasSpeed = in.readBoolean();
+        l.hasBearing = in.readBoolean();
+        l.hasRadius = in.readBoolean();
+        l.mockFlags = in.readInt();
+        l.status = in.readInt();
+        return l;
+    }
+
     public BackgroundLocation makeClone() {
         return new BackgroundLocation(this);
     }
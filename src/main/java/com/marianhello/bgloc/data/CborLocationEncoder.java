@@ -0,0 +1,71 @@
+package com.marianhello.bgloc.data;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compact binary encoding (application/cbor)
+ *
+ * Structure of each location follows location template, same as for JSON,
+ * so server can decode payload with any CBOR library into same objects.
+ */
+public class CborLocationEncoder implements LocationEncoder {
+    public static final String CONTENT_TYPE = "application/cbor";
+    private static final int BUFFER_SIZE = 8192;
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".cbor";
+    }
+
+    @Override
+    public LocationTemplate resolveTemplate(LocationTemplate template) {
+        return template;
+    }
+
+    @Override
+    public Writer newWriter(OutputStream out, CompiledLocationTemplate template) throws IOException {
+        return new CborLocationWriter(new CborWriter(new BufferedOutputStream(out, BUFFER_SIZE)), template);
+    }
+
+    private static class CborLocationWriter implements LocationEncoder.Writer {
+        private final CborWriter mWriter;
+        private final CompiledLocationTemplate mTemplate;
+
+        CborLocationWriter(CborWriter writer, CompiledLocationTemplate template) {
+            mWriter = writer;
+            mTemplate = template;
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            mWriter.beginArray();
+        }
+
+        @Override
+        public void write(BackgroundLocation location) throws IOException {
+            mTemplate.write(mWriter, location);
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            mWriter.endArray();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mWriter.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mWriter.close();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.marianhello.bgloc.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Minimal streaming CBOR (RFC 7049) writer
+ *
+ * Maps and arrays are written with indefinite length, so number of items does not
+ * have to be known in advance. Integers use shortest encoding (1 to 9 bytes),
+ * floating point values are written as fixed width single or double precision.
+ * Writer does not validate structure of written data.
+ */
+public class CborWriter implements CompiledLocationTemplate.ValueWriter {
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1 << 5;
+    private static final int MAJOR_TEXT = 3 << 5;
+    private static final int MAJOR_ARRAY = 4 << 5;
+    private static final int MAJOR_MAP = 5 << 5;
+
+    private static final int INDEFINITE_LENGTH = 31;
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int FLOAT32 = 0xfa;
+    private static final int FLOAT64 = 0xfb;
+    private static final int BREAK = 0xff;
+
+    private final OutputStream mOut;
+    private final byte[] mScratch = new byte[9];
+
+    public CborWriter(OutputStream out) {
+        mOut = out;
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        mOut.write(MAJOR_MAP | INDEFINITE_LENGTH);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        mOut.write(BREAK);
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        mOut.write(MAJOR_ARRAY | INDEFINITE_LENGTH);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        mOut.write(BREAK);
+    }
+
+    @Override
+    public void name(String name) throws IOException {
+        value(name);
+    }
+
+    @Override
+    public void value(String value) throws IOException {
+        if (value == null) {
+            nullValue();
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        writeTypeAndLength(MAJOR_TEXT, bytes.length);
+        mOut.write(bytes);
+    }
+
+    @Override
+    public void value(long value) throws IOException {
+        if (value >= 0) {
+            writeTypeAndLength(MAJOR_UNSIGNED, value);
+        } else {
+            // -1 - n encoding, so Long.MIN_VALUE fits too
+            writeTypeAndLength(MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    @Override
+    public void value(double value) throws IOException {
+        float floatValue = (float) value;
+        if (floatValue == value || Double.isNaN(value)) {
+            // lossless in single precision
+            value(floatValue);
+            return;
+        }
+        long bits = Double.doubleToLongBits(value);
+        mScratch[0] = (byte) FLOAT64;
+        for (int i = 0; i < 8; i++) {
+            mScratch[8 - i] = (byte) (bits >>> (8 * i));
+        }
+        mOut.write(mScratch, 0, 9);
+    }
+
+    @Override
+    public void value(float value) throws IOException {
+        int bits = Float.floatToIntBits(value);
+        mScratch[0] = (byte) FLOAT32;
+        mScratch[1] = (byte) (bits >>> 24);
+        mScratch[2] = (byte) (bits >>> 16);
+        mScratch[3] = (byte) (bits >>> 8);
+        mScratch[4] = (byte) bits;
+        mOut.write(mScratch, 0, 5);
+    }
+
+    @Override
+    public void value(boolean value) throws IOException {
+        mOut.write(value ? TRUE : FALSE);
+    }
+
+    @Override
+    public void nullValue() throws IOException {
+        mOut.write(NULL);
+    }
+
+    public void flush() throws IOException {
+        mOut.flush();
+    }
+
+    public void close() throws IOException {
+        mOut.close();
+    }
+
+    // length is never negative, see value(long)
+    private void writeTypeAndLength(int majorType, long length) throws IOException {
+        if (length < 24) {
+            mOut.write(majorType | (int) length);
+            return;
+        }
+        int size;
+        if (length <= 0xffL) {
+            mScratch[0] = (byte) (majorType | 24);
+            size = 1;
+        } else if (length <= 0xffffL) {
+            mScratch[0] = (byte) (majorType | 25);
+            size = 2;
+        } else if (length <= 0xffffffffL) {
+            mScratch[0] = (byte) (majorType | 26);
+            size = 4;
+        } else {
+            mScratch[0] = (byte) (majorType | 27);
+            size = 8;
+        }
+        for (int i = 0; i < size; i++) {
+            mScratch[size - i] = (byte) (length >>> (8 * i));
+        }
+        mOut.write(mScratch, 0, size + 1);
+    }
+}
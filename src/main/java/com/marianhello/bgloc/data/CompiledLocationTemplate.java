@@ -0,0 +1,273 @@
+package com.marianhello.bgloc.data;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Location template compiled into flat program of instructions
+ *
+ * Template is walked only once, when compiled. Template keys (eg. "@latitude") are resolved
+ * into field accessors, so rendering location is single loop over instructions without
+ * string comparisons. Program is rendered by LocationEncoder implementations through ValueWriter,
+ * JSON output is identical to AbstractLocationTemplate.LocationMapper.
+ *
+ * Compiled template is immutable and can be shared between threads. Changes made
+ * to source template after compilation are not reflected.
+ */
+public final class CompiledLocationTemplate {
+    private static final int OP_BEGIN_OBJECT = 1;
+    private static final int OP_END_OBJECT = 2;
+    private static final int OP_BEGIN_ARRAY = 3;
+    private static final int OP_END_ARRAY = 4;
+    private static final int OP_NAME = 5;
+    private static final int OP_LITERAL = 6;
+
+    private static final int FIELD_ID = 10;
+    private static final int FIELD_PROVIDER = 11;
+    private static final int FIELD_LOCATION_PROVIDER = 12;
+    private static final int FIELD_TIME = 13;
+    private static final int FIELD_LATITUDE = 14;
+    private static final int FIELD_LONGITUDE = 15;
+    private static final int FIELD_ACCURACY = 16;
+    private static final int FIELD_SPEED = 17;
+    private static final int FIELD_ALTITUDE = 18;
+    private static final int FIELD_BEARING = 19;
+    private static final int FIELD_RADIUS = 20;
+    private static final int FIELD_IS_FROM_MOCK_PROVIDER = 21;
+    private static final int FIELD_MOCK_LOCATIONS_ENABLED = 22;
+
+    private static final Map<String, Integer> FIELDS = new HashMap<String, Integer>();
+    static {
+        FIELDS.put("@id", FIELD_ID);
+        FIELDS.put("@provider", FIELD_PROVIDER);
+        FIELDS.put("@locationProvider", FIELD_LOCATION_PROVIDER);
+        FIELDS.put("@time", FIELD_TIME);
+        FIELDS.put("@latitude", FIELD_LATITUDE);
+        FIELDS.put("@longitude", FIELD_LONGITUDE);
+        FIELDS.put("@accuracy", FIELD_ACCURACY);
+        FIELDS.put("@speed", FIELD_SPEED);
+        FIELDS.put("@altitude", FIELD_ALTITUDE);
+        FIELDS.put("@bearing", FIELD_BEARING);
+        FIELDS.put("@radius", FIELD_RADIUS);
+        FIELDS.put("@isFromMockProvider", FIELD_IS_FROM_MOCK_PROVIDER);
+        FIELDS.put("@mockLocationsEnabled", FIELD_MOCK_LOCATIONS_ENABLED);
+    }
+
+    /**
+     * Sink of template output, implemented by encoders of particular wire format
+     */
+    public interface ValueWriter {
+        void beginObject() throws IOException;
+        void endObject() throws IOException;
+        void beginArray() throws IOException;
+        void endArray() throws IOException;
+        void name(String name) throws IOException;
+        void value(String value) throws IOException;
+        void value(long value) throws IOException;
+        void value(double value) throws IOException;
+        void value(float value) throws IOException;
+        void value(boolean value) throws IOException;
+        void nullValue() throws IOException;
+    }
+
+    private final int[] mOps;
+    // instruction argument: member name, literal value or template key of field
+    private final Object[] mArgs;
+
+    private CompiledLocationTemplate(int[] ops, Object[] args) {
+        mOps = ops;
+        mArgs = args;
+    }
+
+    private static class Compiler {
+        private final List<Integer> ops = new ArrayList<Integer>();
+        private final List<Object> args = new ArrayList<Object>();
+
+        private void emit(int op, Object arg) {
+            ops.add(op);
+            args.add(arg);
+        }
+
+        private void compileValue(Object value) {
+            if (value instanceof String) {
+                Integer field = FIELDS.get(value);
+                emit(field != null ? field : OP_LITERAL, value);
+            } else if (value instanceof Map) {
+                compileMap((Map) value);
+            } else if (value instanceof List) {
+                compileList((List) value);
+            } else {
+                emit(OP_LITERAL, value);
+            }
+        }
+
+        private void compileMap(Map values) {
+            emit(OP_BEGIN_OBJECT, null);
+            Iterator<?> it = values.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Object> pair = (Map.Entry) it.next();
+                emit(OP_NAME, pair.getKey());
+                compileValue(pair.getValue());
+            }
+            emit(OP_END_OBJECT, null);
+        }
+
+        private void compileList(List values) {
+            emit(OP_BEGIN_ARRAY, null);
+            Iterator<?> it = values.iterator();
+            while (it.hasNext()) {
+                compileValue(it.next());
+            }
+            emit(OP_END_ARRAY, null);
+        }
+
+        private CompiledLocationTemplate build() {
+            int[] opsArray = new int[ops.size()];
+            for (int i = 0; i < opsArray.length; i++) {
+                opsArray[i] = ops.get(i);
+            }
+            return new CompiledLocationTemplate(opsArray, args.toArray());
+        }
+    }
+
+    /**
+     * Compile location template
+     *
+     * @param template HashMapLocationTemplate or ArrayListLocationTemplate
+     * @return compiled template
+     * @throws IllegalArgumentException when template type is not supported
+     */
+    public static CompiledLocationTemplate compile(LocationTemplate template) {
+        Compiler compiler = new Compiler();
+        if (template instanceof HashMapLocationTemplate) {
+            compiler.compileMap(((HashMapLocationTemplate) template).toMap());
+        } else if (template instanceof ArrayListLocationTemplate) {
+            compiler.compileList(((ArrayListLocationTemplate) template).toList());
+        } else {
+            throw new IllegalArgumentException("Unsupported location template: " + template);
+        }
+        return compiler.build();
+    }
+
+    /**
+     * Write location into ValueWriter
+     */
+    public void write(ValueWriter writer, BackgroundLocation location) throws IOException {
+        for (int i = 0; i < mOps.length; i++) {
+            switch (mOps[i]) {
+                case OP_BEGIN_OBJECT:
+                    writer.beginObject();
+                    break;
+                case OP_END_OBJECT:
+                    writer.endObject();
+                    break;
+                case OP_BEGIN_ARRAY:
+                    writer.beginArray();
+                    break;
+                case OP_END_ARRAY:
+                    writer.endArray();
+                    break;
+                case OP_NAME:
+                    writer.name((String) mArgs[i]);
+                    break;
+                case OP_LITERAL:
+                    writeLiteral(writer, mArgs[i]);
+                    break;
+                case FIELD_ID:
+                    Long locationId = location.getLocationId();
+                    if (locationId != null) {
+                        writer.value(locationId.longValue());
+                    } else {
+                        writer.value((String) mArgs[i]);
+                    }
+                    break;
+                case FIELD_PROVIDER:
+                    String provider = location.getProvider();
+                    writer.value(provider != null ? provider : (String) mArgs[i]);
+                    break;
+                case FIELD_LOCATION_PROVIDER:
+                    Integer locationProvider = location.getLocationProvider();
+                    if (locationProvider != null) {
+                        writer.value(locationProvider.longValue());
+                    } else {
+                        writer.value((String) mArgs[i]);
+                    }
+                    break;
+                case FIELD_TIME:
+                    writer.value(location.getTime());
+                    break;
+                case FIELD_LATITUDE:
+                    writer.value(location.getLatitude());
+                    break;
+                case FIELD_LONGITUDE:
+                    writer.value(location.getLongitude());
+                    break;
+                case FIELD_ACCURACY:
+                    writeFloat(writer, location.hasAccuracy(), location.getAccuracy());
+                    break;
+                case FIELD_SPEED:
+                    writeFloat(writer, location.hasSpeed(), location.getSpeed());
+                    break;
+                case FIELD_ALTITUDE:
+                    if (location.hasAltitude()) {
+                        writer.value(location.getAltitude());
+                    } else {
+                        writer.nullValue();
+                    }
+                    break;
+                case FIELD_BEARING:
+                    writeFloat(writer, location.hasBearing(), location.getBearing());
+                    break;
+                case FIELD_RADIUS:
+                    writeFloat(writer, location.hasRadius(), location.getRadius());
+                    break;
+                case FIELD_IS_FROM_MOCK_PROVIDER:
+                    if (location.hasIsFromMockProvider()) {
+                        writer.value(location.isFromMockProvider());
+                    } else {
+                        writer.nullValue();
+                    }
+                    break;
+                case FIELD_MOCK_LOCATIONS_ENABLED:
+                    if (location.hasMockLocationsEnabled()) {
+                        writer.value(location.areMockLocationsEnabled());
+                    } else {
+                        writer.nullValue();
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static void writeFloat(ValueWriter writer, boolean hasValue, float value) throws IOException {
+        if (hasValue) {
+            writer.value(value);
+        } else {
+            writer.nullValue();
+        }
+    }
+
+    private static void writeLiteral(ValueWriter writer, Object value) throws IOException {
+        if (value instanceof String) {
+            writer.value((String) value);
+        } else if (value instanceof Integer || value instanceof Long) {
+            writer.value(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            writer.value(((Double) value).doubleValue());
+        } else if (value instanceof Float) {
+            writer.value(((Float) value).floatValue());
+        } else if (value instanceof Boolean) {
+            writer.value(((Boolean) value).booleanValue());
+        } else if (value == null || value == JSONObject.NULL) {
+            writer.nullValue();
+        } else {
+            writer.value(String.valueOf(value));
+        }
+    }
+}
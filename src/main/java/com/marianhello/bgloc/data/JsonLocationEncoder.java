@@ -0,0 +1,115 @@
+package com.marianhello.bgloc.data;
+
+import android.util.JsonWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+
+/**
+ * UTF-8 encoded JSON (application/json)
+ */
+public class JsonLocationEncoder implements LocationEncoder {
+    public static final String CONTENT_TYPE = "application/json";
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".json";
+    }
+
+    @Override
+    public LocationTemplate resolveTemplate(LocationTemplate template) {
+        return template;
+    }
+
+    @Override
+    public Writer newWriter(OutputStream out, CompiledLocationTemplate template) throws IOException {
+        return new JsonLocationWriter(new JsonWriter(new OutputStreamWriter(out, "UTF-8")), template);
+    }
+
+    private static class JsonLocationWriter implements LocationEncoder.Writer, CompiledLocationTemplate.ValueWriter {
+        private final JsonWriter mWriter;
+        private final CompiledLocationTemplate mTemplate;
+
+        JsonLocationWriter(JsonWriter writer, CompiledLocationTemplate template) {
+            mWriter = writer;
+            mTemplate = template;
+        }
+
+        @Override
+        public void write(BackgroundLocation location) throws IOException {
+            mTemplate.write(this, location);
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            mWriter.beginObject();
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            mWriter.endObject();
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            mWriter.beginArray();
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            mWriter.endArray();
+        }
+
+        @Override
+        public void name(String name) throws IOException {
+            mWriter.name(name);
+        }
+
+        @Override
+        public void value(String value) throws IOException {
+            mWriter.value(value);
+        }
+
+        @Override
+        public void value(long value) throws IOException {
+            mWriter.value(value);
+        }
+
+        @Override
+        public void value(double value) throws IOException {
+            mWriter.value(value);
+        }
+
+        @Override
+        public void value(float value) throws IOException {
+            // written as Float to keep its shortest decimal representation
+            mWriter.value(Float.valueOf(value));
+        }
+
+        @Override
+        public void value(boolean value) throws IOException {
+            mWriter.value(value);
+        }
+
+        @Override
+        public void nullValue() throws IOException {
+            mWriter.nullValue();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mWriter.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mWriter.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.marianhello.bgloc.data;
+
+import android.database.Cursor;
+
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+
+/**
+ * Reads locations from cursor rows
+ *
+ * Column indexes are resolved once, when reader is created, instead of per row.
+ * Columns missing in cursor projection are skipped, so reader can be used
+ * with queries selecting only some columns (except of _ID).
+ *
+ * Reader is bound to cursor (or cursors with same projection) it was created for.
+ */
+public class LocationCursorReader {
+    private final int idIdx;
+    private final int providerIdx;
+    private final int locationProviderIdx;
+    private final int timeIdx;
+    private final int latitudeIdx;
+    private final int longitudeIdx;
+    private final int accuracyIdx;
+    private final int hasAccuracyIdx;
+    private final int speedIdx;
+    private final int hasSpeedIdx;
+    private final int altitudeIdx;
+    private final int hasAltitudeIdx;
+    private final int bearingIdx;
+    private final int hasBearingIdx;
+    private final int radiusIdx;
+    private final int hasRadiusIdx;
+    private final int batchStartMillisIdx;
+    private final int statusIdx;
+    private final int mockFlagsIdx;
+
+    public LocationCursorReader(Cursor c) {
+        idIdx = c.getColumnIndex(LocationEntry._ID);
+        providerIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_PROVIDER);
+        locationProviderIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_LOCATION_PROVIDER);
+        timeIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_TIME);
+        latitudeIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_LATITUDE);
+        longitudeIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_LONGITUDE);
+        accuracyIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_ACCURACY);
+        hasAccuracyIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_ACCURACY);
+        speedIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_SPEED);
+        hasSpeedIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_SPEED);
+        altitudeIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_ALTITUDE);
+        hasAltitudeIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_ALTITUDE);
+        bearingIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_BEARING);
+        hasBearingIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_BEARING);
+        radiusIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_RADIUS);
+        hasRadiusIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_RADIUS);
+        batchStartMillisIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_BATCH_START_MILLIS);
+        statusIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_STATUS);
+        mockFlagsIdx = c.getColumnIndex(LocationEntry.COLUMN_NAME_MOCK_FLAGS);
+    }
+
+    /**
+     * Read current row into new location
+     */
+    public BackgroundLocation read(Cursor c) {
+        return read(c, new BackgroundLocation());
+    }
+
+    /**
+     * Read current row into given location
+     *
+     * Location is reset first, so same instance can be reused for every row
+     * by consumers which do not keep reference to it (eg. batch writer).
+     *
+     * @param c cursor positioned at row
+     * @param l location to fill
+     * @return l
+     */
+    public BackgroundLocation read(Cursor c, BackgroundLocation l) {
+        l.reset();
+        l.setLocationId(c.getLong(idIdx));
+        if (providerIdx >= 0) l.setProvider(c.getString(providerIdx));
+        if (locationProviderIdx >= 0) l.setLocationProvider(c.getInt(locationProviderIdx));
+        if (timeIdx >= 0) l.setTime(c.getLong(timeIdx));
+        if (latitudeIdx >= 0) l.setLatitude(c.getDouble(latitudeIdx));
+        if (longitudeIdx >= 0) l.setLongitude(c.getDouble(longitudeIdx));
+        if (hasAccuracyIdx >= 0 && c.getInt(hasAccuracyIdx) == 1) l.setAccuracy(c.getFloat(accuracyIdx));
+        if (hasSpeedIdx >= 0 && c.getInt(hasSpeedIdx) == 1) l.setSpeed(c.getFloat(speedIdx));
+        if (hasAltitudeIdx >= 0 && c.getInt(hasAltitudeIdx) == 1) l.setAltitude(c.getDouble(altitudeIdx));
+        if (hasBearingIdx >= 0 && c.getInt(hasBearingIdx) == 1) l.setBearing(c.getFloat(bearingIdx));
+        if (hasRadiusIdx >= 0 && c.getInt(hasRadiusIdx) == 1) l.setRadius(c.getFloat(radiusIdx));
+        if (batchStartMillisIdx >= 0) l.setBatchStartMillis(c.getLong(batchStartMillisIdx));
+        if (statusIdx >= 0) l.setStatus(c.getInt(statusIdx));
+        if (mockFlagsIdx >= 0) l.setMockFlags(c.getInt(mockFlagsIdx));
+        return l;
+    }
+}
@@ -10,11 +10,15 @@ public interface LocationDAO {
     BackgroundLocation getNextUnpostedLocation(long fromId);
     long getUnpostedLocationsCount();
     long getLocationsForSyncCount(long millisSinceLastBatch);
+    Collection<BackgroundLocation> getLocationsForSync(long fromId, int limit);
     long persistLocation(BackgroundLocation location);
     long persistLocation(BackgroundLocation location, int maxRows);
     long persistLocationForSync(BackgroundLocation location, int maxRows);
+    void persistLocations(Collection<BackgroundLocation> locations);
     void updateLocationForSync(long locationId);
+    int updateLocationsForSync(Collection<Long> locationIds);
     void deleteLocationById(long locationId);
+    int deleteLocationsById(Collection<Long> locationIds);
     BackgroundLocation deleteFirstUnpostedLocation();
     int deleteAllLocations();
     int deleteUnpostedLocations();
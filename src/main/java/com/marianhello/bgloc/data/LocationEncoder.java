@@ -0,0 +1,44 @@
+package com.marianhello.bgloc.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Wire format of posted and synced locations
+ *
+ * Encoder writes array of locations, each location rendered by compiled location template.
+ */
+public interface LocationEncoder {
+    /**
+     * @return value of Content-Type request header
+     */
+    String getContentType();
+
+    /**
+     * @return extension of batch files, eg. ".json"
+     */
+    String getFileExtension();
+
+    /**
+     * Returns template, which determines location fields read by encoder
+     *
+     * @param template configured location template
+     * @return template or encoder specific template when encoder does not use configured one
+     */
+    LocationTemplate resolveTemplate(LocationTemplate template);
+
+    /**
+     * Create writer of location array
+     *
+     * Closing writer closes out as well.
+     */
+    Writer newWriter(OutputStream out, CompiledLocationTemplate template) throws IOException;
+
+    interface Writer extends Closeable {
+        void beginArray() throws IOException;
+        void write(BackgroundLocation location) throws IOException;
+        void endArray() throws IOException;
+        void flush() throws IOException;
+    }
+}
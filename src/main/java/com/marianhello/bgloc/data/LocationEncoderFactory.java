@@ -0,0 +1,27 @@
+package com.marianhello.bgloc.data;
+
+public class LocationEncoderFactory {
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_CBOR = "cbor";
+    public static final String FORMAT_POLYLINE = "polyline";
+
+    /**
+     * Returns encoder of given payload format
+     *
+     * @param format one of FORMAT_JSON, FORMAT_CBOR, FORMAT_POLYLINE
+     * @return encoder or json encoder for null or unknown format
+     */
+    public static LocationEncoder fromFormat(String format) {
+        if (FORMAT_CBOR.equalsIgnoreCase(format)) {
+            return new CborLocationEncoder();
+        }
+        if (FORMAT_POLYLINE.equalsIgnoreCase(format)) {
+            return new PolylineLocationEncoder();
+        }
+        return getDefault();
+    }
+
+    public static LocationEncoder getDefault() {
+        return new JsonLocationEncoder();
+    }
+}
@@ -0,0 +1,453 @@
+package com.marianhello.bgloc.data;
+
+import com.marianhello.logging.LoggerManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind journal in front of LocationDAO
+ *
+ * Inserts and status changes of locations are queued in memory and written
+ * to the LocationDAO in one group commit per flush window. Flush window is closed
+ * either when number of queued operations reaches maxPendingOps or when flushIntervalMillis
+ * elapsed since the first queued operation, whichever comes first.
+ *
+ * Operations are coalesced before being written:
+ * - status change of not yet written location is folded into its insert
+ * - location that was deleted before it was written is never written at all
+ *
+ * All writes are executed on single journal thread in the order operations were queued,
+ * so status change is never applied before the insert it refers to. After shutdown
+ * journal writes through to the LocationDAO.
+ *
+ * Failed writes are not lost. Failed operations are put back in front of the queue
+ * and retried after flushIntervalMillis, or with the next flush. At most MAX_RETAINED_OPS
+ * operations are retained, oldest are dropped beyond that.
+ *
+ * When journal file is given, every queued operation is also appended to it
+ * (see LocationJournalFile) and operations left there by killed process are replayed
+ * when journal is created. Appends are not fsynced, so operations in the current flush
+ * window survive process death, but not power loss. Location written by group commit
+ * just before the process was killed can be replayed once more.
+ *
+ * Without journal file, operations queued in the current flush window (at most maxPendingOps
+ * operations or flushIntervalMillis) live only in memory and are lost if the process is killed.
+ *
+ * Queued locations are not visible to LocationDAO readers until flushed.
+ * Callers reading locations back (eg. before sync) must call flush first.
+ * Journal with maxPendingOps = 1 writes every operation right away.
+ */
+public class LocationJournal {
+    public static final int DEFAULT_MAX_PENDING_OPS = 50;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5000;
+    public static final int MAX_RETAINED_OPS = 1000;
+
+    private final LocationDAO mLocationDAO;
+    private final int mMaxPendingOps;
+    private final long mFlushIntervalMillis;
+    private final ScheduledExecutorService mScheduler;
+    private final LocationJournalFile mJournalFile;
+
+    private final Object mLock = new Object();
+    private List<Operation> mPendingOps = new ArrayList<Operation>();
+    private int mPendingForSyncCount = 0;
+    private final Map<BackgroundLocation, Long> mKeys = new IdentityHashMap<BackgroundLocation, Long>();
+    private long mNextKey = 1;
+    private boolean mIsFlushScheduled = false;
+    private volatile boolean mIsShutdown = false;
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
+
+    private org.slf4j.Logger logger;
+
+    static class Operation {
+        final long key;
+        final BackgroundLocation location;
+        final boolean isInsert;
+        final int status;
+
+        Operation(long key, BackgroundLocation location, boolean isInsert, int status) {
+            this.key = key;
+            this.location = location;
+            this.isInsert = isInsert;
+            this.status = status;
+        }
+    }
+
+    public LocationJournal(LocationDAO dao) {
+        this(dao, null);
+    }
+
+    public LocationJournal(LocationDAO dao, File journalFile) {
+        this(dao, journalFile, DEFAULT_MAX_PENDING_OPS, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public LocationJournal(LocationDAO dao, int maxPendingOps, long flushIntervalMillis) {
+        this(dao, null, maxPendingOps, flushIntervalMillis);
+    }
+
+    /**
+     * Create journal and replay operations left in journalFile by previous process
+     *
+     * @param dao
+     * @param journalFile file to log operations to or null to keep them only in memory
+     * @param maxPendingOps
+     * @param flushIntervalMillis
+     */
+    public LocationJournal(LocationDAO dao, File journalFile, int maxPendingOps, long flushIntervalMillis) {
+        logger = LoggerManager.getLogger(LocationJournal.class);
+
+        mLocationDAO = dao;
+        mMaxPendingOps = maxPendingOps;
+        mFlushIntervalMillis = flushIntervalMillis;
+        mScheduler = Executors.newSingleThreadScheduledExecutor();
+        mJournalFile = journalFile != null ? new LocationJournalFile(journalFile) : null;
+
+        if (mJournalFile != null) {
+            replay();
+        }
+    }
+
+    /**
+     * Queue operations left in journal file by previous process and write them right away
+     */
+    private void replay() {
+        List<Operation> ops = mJournalFile.read();
+        if (ops.isEmpty()) {
+            return;
+        }
+
+        logger.info("Replaying {} journal operations", ops.size());
+        synchronized (mLock) {
+            for (Operation op : ops) {
+                if (op.isInsert) {
+                    mKeys.put(op.location, op.key);
+                    mNextKey = Math.max(mNextKey, op.key + 1);
+                } else if (op.status == BackgroundLocation.SYNC_PENDING) {
+                    mPendingForSyncCount++;
+                }
+            }
+            mPendingOps.addAll(ops);
+        }
+        mScheduler.execute(mFlushTask);
+    }
+
+    /**
+     * Queue location for insertion
+     *
+     * Location id is set when location is actually written.
+     * @param location
+     */
+    public void append(BackgroundLocation location) {
+        enqueue(location, true, location.getStatus());
+    }
+
+    /**
+     * Queue location status change
+     *
+     * Status can be one of BackgroundLocation.DELETED or BackgroundLocation.SYNC_PENDING.
+     * @param location previously appended location
+     * @param status
+     */
+    public void setStatus(BackgroundLocation location, int status) {
+        enqueue(location, false, status);
+    }
+
+    /**
+     * Returns number of queued locations marked for sync, which are not written yet.
+     */
+    public int getPendingForSyncCount() {
+        synchronized (mLock) {
+            return mPendingForSyncCount;
+        }
+    }
+
+    /**
+     * Write all queued operations and wait until they are written.
+     */
+    public void flush() {
+        Future<?> future;
+        try {
+            future = mScheduler.submit(new Runnable() {
+                @Override
+                public void run() {
+                    writePending();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // journal thread is gone, write on caller thread
+            writePending();
+            return;
+        }
+
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.error("Journal flush failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Flush all queued operations and stop the journal thread.
+     * Subsequent operations are written through to the LocationDAO.
+     */
+    public void shutdown() {
+        mIsShutdown = true;
+        flush();
+        mScheduler.shutdown();
+        if (mJournalFile != null) {
+            synchronized (mLock) {
+                mJournalFile.close();
+            }
+        }
+    }
+
+    private void enqueue(BackgroundLocation location, boolean isInsert, int status) {
+        if (mIsShutdown) {
+            synchronized (mLock) {
+                mPendingOps.add(newOperation(location, isInsert, status));
+            }
+            // previously failed operations are written together with this one
+            writePending();
+            return;
+        }
+
+        boolean flushNow;
+        boolean scheduleFlush = false;
+        synchronized (mLock) {
+            Operation op = newOperation(location, isInsert, status);
+            mPendingOps.add(op);
+            appendToJournalFile(op);
+            if (!op.isInsert && op.status == BackgroundLocation.SYNC_PENDING) {
+                mPendingForSyncCount++;
+            }
+            flushNow = mPendingOps.size() >= mMaxPendingOps;
+            if (!flushNow && !mIsFlushScheduled) {
+                mIsFlushScheduled = true;
+                scheduleFlush = true;
+            }
+        }
+
+        try {
+            if (flushNow) {
+                mScheduler.execute(mFlushTask);
+            } else if (scheduleFlush) {
+                mScheduler.schedule(mFlushTask, mFlushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            writePending();
+        }
+    }
+
+    /**
+     * Create operation keyed by its location, must be called with mLock held
+     */
+    private Operation newOperation(BackgroundLocation location, boolean isInsert, int status) {
+        long key = 0;
+        if (isInsert) {
+            key = mNextKey++;
+            mKeys.put(location, key);
+        } else if (mKeys.containsKey(location)) {
+            key = mKeys.get(location);
+        }
+        return new Operation(key, location, isInsert, status);
+    }
+
+    /**
+     * Must be called with mLock held
+     */
+    private void appendToJournalFile(Operation op) {
+        if (mJournalFile == null) {
+            return;
+        }
+        try {
+            mJournalFile.append(op);
+        } catch (IOException e) {
+            logger.error("Error appending to journal file: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Replace journal file content with operations, which are still pending.
+     * Must be called with mLock held
+     */
+    private void rewriteJournalFile() {
+        if (mJournalFile == null) {
+            return;
+        }
+        try {
+            mJournalFile.rewrite(mPendingOps);
+        } catch (IOException e) {
+            logger.error("Error rewriting journal file: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Put failed operations back in front of the queue and schedule retry
+     */
+    private void requeue(List<Operation> failed) {
+        boolean scheduleRetry = false;
+        synchronized (mLock) {
+            List<Operation> ops = new ArrayList<Operation>(failed.size() + mPendingOps.size());
+            ops.addAll(failed);
+            ops.addAll(mPendingOps);
+
+            int dropCount = ops.size() - Math.max(MAX_RETAINED_OPS, mMaxPendingOps);
+            if (dropCount > 0) {
+                logger.error("Journal is full, dropping {} oldest operations", dropCount);
+                for (Operation op : ops.subList(0, dropCount)) {
+                    if (op.isInsert) {
+                        mKeys.remove(op.location);
+                    }
+                }
+                ops = new ArrayList<Operation>(ops.subList(dropCount, ops.size()));
+            }
+
+            mPendingOps = ops;
+            mPendingForSyncCount = 0;
+            for (Operation op : ops) {
+                if (!op.isInsert && op.status == BackgroundLocation.SYNC_PENDING) {
+                    mPendingForSyncCount++;
+                }
+            }
+            if (!mIsShutdown && !mIsFlushScheduled) {
+                mIsFlushScheduled = true;
+                scheduleRetry = true;
+            }
+        }
+
+        if (scheduleRetry) {
+            try {
+                mScheduler.schedule(mFlushTask, mFlushIntervalMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // journal is shutting down, operations are retried with next write
+            }
+        }
+    }
+
+    private synchronized void writePending() {
+        List<Operation> ops;
+        synchronized (mLock) {
+            ops = mPendingOps;
+            mPendingOps = new ArrayList<Operation>();
+            mPendingForSyncCount = 0;
+            mIsFlushScheduled = false;
+        }
+
+        if (!ops.isEmpty()) {
+            List<Operation> failed = write(ops);
+            if (!failed.isEmpty()) {
+                requeue(failed);
+            }
+            synchronized (mLock) {
+                rewriteJournalFile();
+            }
+        }
+    }
+
+    /**
+     * Coalesce and write operations
+     *
+     * @return operations, which need to be retried because write failed
+     */
+    private synchronized List<Operation> write(List<Operation> ops) {
+        List<BackgroundLocation> inserts = new ArrayList<BackgroundLocation>();
+        Set<BackgroundLocation> batch = Collections.newSetFromMap(new IdentityHashMap<BackgroundLocation, Boolean>());
+        Map<Long, Integer> updates = new LinkedHashMap<Long, Integer>();
+
+        for (Operation op : ops) {
+            BackgroundLocation location = op.location;
+            if (op.isInsert) {
+                inserts.add(location);
+                batch.add(location);
+            } else if (batch.contains(location)) {
+                if (op.status == BackgroundLocation.DELETED) {
+                    inserts.remove(location);
+                    batch.remove(location);
+                    forgetKey(location);
+                } else {
+                    location.setStatus(op.status);
+                }
+            } else if (location.getLocationId() != null) {
+                Long locationId = location.getLocationId();
+                updates.remove(locationId);
+                updates.put(locationId, op.status);
+            } else {
+                logger.warn("Dropping status change of location, which was never appended");
+            }
+        }
+
+        List<Long> syncIds = new ArrayList<Long>();
+        List<Long> deleteIds = new ArrayList<Long>();
+        for (Map.Entry<Long, Integer> update : updates.entrySet()) {
+            if (update.getValue() == BackgroundLocation.DELETED) {
+                deleteIds.add(update.getKey());
+            } else {
+                syncIds.add(update.getKey());
+            }
+        }
+
+        boolean isInserted = false;
+        try {
+            if (!inserts.isEmpty()) {
+                mLocationDAO.persistLocations(inserts);
+            }
+            isInserted = true;
+            for (BackgroundLocation location : inserts) {
+                forgetKey(location);
+            }
+            if (!syncIds.isEmpty()) {
+                mLocationDAO.updateLocationsForSync(syncIds);
+            }
+            if (!deleteIds.isEmpty()) {
+                mLocationDAO.deleteLocationsById(deleteIds);
+            }
+        } catch (Exception e) {
+            logger.error("Error writing {} journal operations, will retry: {}", ops.size(), e.getMessage());
+            if (!isInserted) {
+                // insert transaction was rolled back, ids possibly assigned by dao are not valid
+                for (BackgroundLocation location : inserts) {
+                    location.setLocationId(null);
+                }
+                return ops;
+            }
+            // status updates are idempotent, so all of them are retried
+            List<Operation> retry = new ArrayList<Operation>();
+            for (Operation op : ops) {
+                if (!op.isInsert && !batch.contains(op.location) && op.location.getLocationId() != null) {
+                    retry.add(op);
+                }
+            }
+            return retry;
+        }
+
+        return Collections.emptyList();
+    }
+
+    private void forgetKey(BackgroundLocation location) {
+        synchronized (mLock) {
+            mKeys.remove(location);
+        }
+    }
+}
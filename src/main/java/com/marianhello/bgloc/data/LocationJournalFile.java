@@ -0,0 +1,194 @@
+package com.marianhello.bgloc.data;
+
+import com.marianhello.logging.LoggerManager;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only on-disk log of LocationJournal operations
+ *
+ * Every queued operation is appended as one length prefixed record with single write call.
+ * Records are not fsynced, so they survive process death (page cache is flushed by kernel),
+ * but not power loss. After each group commit the log is rewritten to contain only
+ * operations, which are still pending.
+ *
+ * Status change of location, which is not written yet, refers to its insert by journal key.
+ * Status change of written location refers to it by location id.
+ */
+class LocationJournalFile {
+    private static final byte RECORD_INSERT = 1;
+    private static final byte RECORD_STATUS_BY_KEY = 2;
+    private static final byte RECORD_STATUS_BY_ID = 3;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    private final File mFile;
+    private FileOutputStream mStream;
+    private final ByteArrayOutputStream mRecordBuffer = new ByteArrayOutputStream(128);
+
+    private org.slf4j.Logger logger;
+
+    LocationJournalFile(File file) {
+        logger = LoggerManager.getLogger(LocationJournalFile.class);
+        mFile = file;
+    }
+
+    /**
+     * Read operations left in the log by previous process
+     *
+     * Truncated or unreadable tail of the log is ignored.
+     *
+     * @return operations in order they were appended
+     */
+    List<LocationJournal.Operation> read() {
+        List<LocationJournal.Operation> ops = new ArrayList<LocationJournal.Operation>();
+        if (!mFile.exists()) {
+            return ops;
+        }
+
+        Map<Long, BackgroundLocation> inserts = new HashMap<Long, BackgroundLocation>();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            while (true) {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    logger.error("Location journal is corrupted, ignoring rest of it");
+                    break;
+                }
+                byte[] record = new byte[length];
+                in.readFully(record);
+                DataInputStream r = new DataInputStream(new ByteArrayInputStream(record));
+                byte type = r.readByte();
+                long key = r.readLong();
+                if (type == RECORD_INSERT) {
+                    BackgroundLocation location = BackgroundLocation.readFrom(r);
+                    inserts.put(key, location);
+                    ops.add(new LocationJournal.Operation(key, location, true, location.getStatus()));
+                } else if (type == RECORD_STATUS_BY_KEY) {
+                    BackgroundLocation location = inserts.get(key);
+                    if (location != null) {
+                        ops.add(new LocationJournal.Operation(key, location, false, r.readInt()));
+                    }
+                } else if (type == RECORD_STATUS_BY_ID) {
+                    BackgroundLocation location = new BackgroundLocation();
+                    location.setLocationId(key);
+                    ops.add(new LocationJournal.Operation(0, location, false, r.readInt()));
+                }
+            }
+        } catch (EOFException e) {
+            // end of log or record truncated by process death
+        } catch (IOException e) {
+            logger.error("Error reading location journal, ignoring rest of it: {}", e.getMessage());
+        } finally {
+            closeQuietly(in);
+        }
+
+        return ops;
+    }
+
+    /**
+     * Append operation to the log
+     *
+     * @param op
+     * @throws IOException
+     */
+    void append(LocationJournal.Operation op) throws IOException {
+        if (mStream == null) {
+            mStream = new FileOutputStream(mFile, true);
+        }
+        mStream.write(toRecord(op));
+    }
+
+    /**
+     * Atomically replace the log with given operations
+     *
+     * @param ops operations still pending
+     * @throws IOException
+     */
+    void rewrite(List<LocationJournal.Operation> ops) throws IOException {
+        closeQuietly(mStream);
+        mStream = null;
+
+        if (ops.isEmpty()) {
+            if (mFile.exists() && !mFile.delete()) {
+                throw new IOException("Cannot delete " + mFile);
+            }
+            return;
+        }
+
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmpFile);
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            for (LocationJournal.Operation op : ops) {
+                buffer.write(toRecord(op));
+            }
+            buffer.writeTo(out);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmpFile.renameTo(mFile)) {
+            throw new IOException("Cannot rename " + tmpFile + " to " + mFile);
+        }
+    }
+
+    void close() {
+        closeQuietly(mStream);
+        mStream = null;
+    }
+
+    private byte[] toRecord(LocationJournal.Operation op) throws IOException {
+        mRecordBuffer.reset();
+        DataOutputStream out = new DataOutputStream(mRecordBuffer);
+        out.writeInt(0); // placeholder for record length
+        Long locationId = op.location.getLocationId();
+        if (op.isInsert) {
+            out.writeByte(RECORD_INSERT);
+            out.writeLong(op.key);
+            op.location.writeTo(out);
+        } else if (locationId != null) {
+            out.writeByte(RECORD_STATUS_BY_ID);
+            out.writeLong(locationId);
+            out.writeInt(op.status);
+        } else {
+            out.writeByte(RECORD_STATUS_BY_KEY);
+            out.writeLong(op.key);
+            out.writeInt(op.status);
+        }
+        out.flush();
+
+        byte[] record = mRecordBuffer.toByteArray();
+        int length = record.length - 4;
+        record[0] = (byte) (length >>> 24);
+        record[1] = (byte) (length >>> 16);
+        record[2] = (byte) (length >>> 8);
+        record[3] = (byte) length;
+        return record;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.marianhello.bgloc.data;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+/**
+ * Delta encoding of location arrays for large batch uploads
+ *
+ * Locations are written as single JSON object. Location template is not used,
+ * fields are fixed (see resolveTemplate):
+ * <pre>
+ * {"encoding":"polyline","precision":6,"points":"...","extraFields":["time","accuracy"],"extras":"..."}
+ * </pre>
+ *
+ * Points string is Google encoded polyline of latitude and longitude only,
+ * multiplied by 10^precision and rounded. It can be decoded by any polyline decoder,
+ * which supports given precision (5 is Google default).
+ *
+ * Extras string contains, for every location, values in order of "extraFields":
+ * time in milliseconds since epoch and accuracy in whole meters or -1 when location
+ * has no accuracy. Same algorithm as for points is used, but with 64 bit values
+ * (time does not fit into 32 bits), so general-purpose polyline decoders must not be used.
+ * First location is stored in full, each following location as difference to previous one.
+ * Value is zigzag encoded (v &lt; 0 ? ~(v &lt;&lt; 1) : v &lt;&lt; 1), then split into 5 bit
+ * chunks, least significant first. Every chunk except last one is ORed with 0x20
+ * and 63 is added to get printable character.
+ *
+ * Decoding of extras on server (pseudo code, integer arithmetic must be 64 bit,
+ * eg. BigInt in JavaScript):
+ * <pre>
+ * values = [], index = 0
+ * while index &lt; extras.length:
+ *     result = 0, shift = 0
+ *     do:
+ *         b = extras[index++] - 63
+ *         result |= (b &amp; 0x1f) &lt;&lt; shift
+ *         shift += 5
+ *     while b &gt;= 0x20
+ *     values.push(result &amp; 1 ? ~(result &gt;&gt; 1) : result &gt;&gt; 1)
+ * prev = [0, 0]
+ * for i in 0, 2, 4, ...:
+ *     for f in 0..1: prev[f] += values[i + f]
+ *     emit {time: prev[0], accuracy: prev[1] &lt; 0 ? null : prev[1]}
+ * </pre>
+ * N-th emitted extras belong to n-th point.
+ */
+public class PolylineLocationEncoder implements LocationEncoder {
+    public static final String CONTENT_TYPE = "application/json";
+    public static final int DEFAULT_PRECISION = 6;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int mPrecision;
+
+    public PolylineLocationEncoder() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision number of decimal places of latitude and longitude (5 is Google default)
+     */
+    public PolylineLocationEncoder(int precision) {
+        mPrecision = precision;
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".json";
+    }
+
+    @Override
+    public LocationTemplate resolveTemplate(LocationTemplate template) {
+        ArrayList fields = new ArrayList();
+        fields.add("@latitude");
+        fields.add("@longitude");
+        fields.add("@time");
+        fields.add("@accuracy");
+        return new ArrayListLocationTemplate(fields);
+    }
+
+    @Override
+    public Writer newWriter(OutputStream out, CompiledLocationTemplate template) throws IOException {
+        return new PolylineWriter(new BufferedOutputStream(out, BUFFER_SIZE), mPrecision);
+    }
+
+    private static class PolylineWriter implements LocationEncoder.Writer {
+        private final OutputStream mOut;
+        private final ByteArrayOutputStream mExtras = new ByteArrayOutputStream();
+        private final int mPrecision;
+        private final double mFactor;
+
+        private long mLatitude = 0;
+        private long mLongitude = 0;
+        private long mTime = 0;
+        private long mAccuracy = 0;
+
+        PolylineWriter(OutputStream out, int precision) {
+            mOut = out;
+            mPrecision = precision;
+            mFactor = Math.pow(10, precision);
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            writeAscii("{\"encoding\":\"polyline\",\"precision\":" + mPrecision + ",\"points\":\"");
+        }
+
+        @Override
+        public void write(BackgroundLocation location) throws IOException {
+            long latitude = Math.round(location.getLatitude() * mFactor);
+            long longitude = Math.round(location.getLongitude() * mFactor);
+            long time = location.getTime();
+            long accuracy = location.hasAccuracy() ? Math.round(location.getAccuracy()) : -1;
+
+            // deltas of rounded values, so rounding errors do not accumulate
+            writeValue(mOut, latitude - mLatitude);
+            writeValue(mOut, longitude - mLongitude);
+            // extras are buffered until all points are written (few bytes per location)
+            writeValue(mExtras, time - mTime);
+            writeValue(mExtras, accuracy - mAccuracy);
+
+            mLatitude = latitude;
+            mLongitude = longitude;
+            mTime = time;
+            mAccuracy = accuracy;
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            writeAscii("\",\"extraFields\":[\"time\",\"accuracy\"],\"extras\":\"");
+            mExtras.writeTo(mOut);
+            mExtras.reset();
+            writeAscii("\"}");
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mOut.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mOut.close();
+        }
+
+        private static void writeValue(OutputStream out, long value) throws IOException {
+            long v = value < 0 ? ~(value << 1) : value << 1;
+            while (v >= 0x20 || v < 0) {
+                writeChar(out, (int) ((0x20 | (v & 0x1f)) + 63));
+                v >>>= 5;
+            }
+            writeChar(out, (int) (v + 63));
+        }
+
+        private static void writeChar(OutputStream out, int c) throws IOException {
+            if (c == '\\') {
+                // only character of polyline alphabet which has to be escaped in JSON string
+                out.write('\\');
+            }
+            out.write(c);
+        }
+
+        private void writeAscii(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) {
+                mOut.write(s.charAt(i));
+            }
+        }
+    }
+}
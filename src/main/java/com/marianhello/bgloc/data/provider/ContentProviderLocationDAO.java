@@ -1,17 +1,21 @@
 package com.marianhello.bgloc.data.provider;
 
 import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.net.Uri;
-import android.text.TextUtils;
+import android.os.RemoteException;
 
 import com.marianhello.bgloc.ResourceResolver;
 import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.LocationCursorReader;
 import com.marianhello.bgloc.data.LocationDAO;
-import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract;
 import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
 import com.marianhello.logging.LoggerManager;
 
@@ -43,7 +47,7 @@ public class ContentProviderLocationDAO implements LocationDAO {
      * @return collection of locations
      */
     private Collection<BackgroundLocation> getLocations(String whereClause, String[] whereArgs) {
-        Collection<BackgroundLocation> locations = new ArrayList<BackgroundLocation>();
+        Collection<BackgroundLocation> locations;
         Cursor cursor = null;
 
         try {
@@ -54,8 +58,10 @@ public class ContentProviderLocationDAO implements LocationDAO {
                     whereArgs,
                     LocationEntry.COLUMN_NAME_TIME + " ASC"
             );
+            LocationCursorReader reader = new LocationCursorReader(cursor);
+            locations = new ArrayList<BackgroundLocation>(cursor.getCount());
             while (cursor.moveToNext()) {
-                locations.add(BackgroundLocation.fromCursor(cursor));
+                locations.add(reader.read(cursor));
             }
         } finally {
             if (cursor != null) {
@@ -109,17 +115,32 @@ public class ContentProviderLocationDAO implements LocationDAO {
     }
 
     public int getLocationsCount() {
-        Cursor cursor = mResolver.query(
-                mContentUri,
-                null,
-                null,
-                null,
-                ""
-        );
+        return (int) getLocationsCount(null, null);
+    }
 
-        int count = cursor.getCount();
-        cursor.close();
-        return count;
+    /**
+     * Count locations that match whereClause without reading them
+     *
+     * @param whereClause
+     * @param whereArgs
+     * @return number of matching locations
+     */
+    private long getLocationsCount(String whereClause, String[] whereArgs) {
+        Cursor cursor = null;
+        try {
+            cursor = mResolver.query(
+                    mContentUri,
+                    new String[] { "count(*)" },
+                    whereClause,
+                    whereArgs,
+                    null
+            );
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
     }
 
     @Override
@@ -199,70 +220,47 @@ public class ContentProviderLocationDAO implements LocationDAO {
 
     @Override
     public long getUnpostedLocationsCount() {
-        String whereClause = SQLiteLocationContract.LocationEntry.COLUMN_NAME_STATUS + " = ?";
         String[] whereArgs = { String.valueOf(BackgroundLocation.POST_PENDING) };
 
-        Cursor cursor = mResolver.query(
-                mContentUri,
-                null,
-                whereClause,
-                whereArgs,
-                null);
-
-        int count = cursor.getCount();
-        cursor.close();
-        return count;
+        return getLocationsCount(LocationEntry.SQL_WHERE_STATUS, whereArgs);
     }
 
     @Override
     public long getLocationsForSyncCount(long millisSinceLastBatch) {
-        String whereClause = TextUtils.join("", new String[]{
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_STATUS + " = ? AND ( ",
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + " IS NULL OR ",
-                SQLiteLocationContract.LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + " < ? )",
-        });
         String[] whereArgs = {
                 String.valueOf(BackgroundLocation.SYNC_PENDING),
                 String.valueOf(millisSinceLastBatch)
         };
 
-        Cursor cursor = mResolver.query(
-                mContentUri,
-                null,
-                whereClause,
-                whereArgs,
-                null);
-
-        int count = cursor.getCount();
-        cursor.close();
-        return count;
+        return getLocationsCount(LocationEntry.SQL_WHERE_STATUS_BEFORE_BATCH, whereArgs);
     }
 
-    public Uri getOldestLocationUri() {
+    @Override
+    public Collection<BackgroundLocation> getLocationsForSync(long fromId, int limit) {
+        Collection<BackgroundLocation> locations;
+        String[] whereArgs = { String.valueOf(BackgroundLocation.SYNC_PENDING), String.valueOf(fromId) };
+
         Cursor cursor = null;
         try {
             cursor = mResolver.query(
-                    mContentUri,
-                    new String[]{"min(" + LocationEntry._ID + ")"},
-                    TextUtils.join("", new String[]{
-                            LocationEntry.COLUMN_NAME_TIME,
-                            "= (SELECT min(",
-                            LocationEntry.COLUMN_NAME_TIME,
-                            ") FROM ",
-                            LocationEntry.TABLE_NAME,
-                            ")"
-                    }),
+                    LocationContentProvider.buildUriWithLimit(mAuthority, limit),
                     null,
-                    null
+                    LocationEntry.SQL_WHERE_STATUS_AFTER_ID,
+                    whereArgs,
+                    LocationEntry._ID + " ASC"
             );
-
-            cursor.moveToFirst();
-            return LocationContentProvider.buildUriWithId(mAuthority, cursor.getLong(0));
+            LocationCursorReader reader = new LocationCursorReader(cursor);
+            locations = new ArrayList<BackgroundLocation>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                locations.add(reader.read(cursor));
+            }
         } finally {
             if (cursor != null) {
                 cursor.close();
             }
         }
+
+        return locations;
     }
 
     /**
@@ -277,53 +275,53 @@ public class ContentProviderLocationDAO implements LocationDAO {
         return Integer.valueOf(locationUri.getLastPathSegment());
     }
 
+    /**
+     * Persist locations into database in single batch
+     *
+     * Each location will have locationId set to its rowId.
+     * Batch is applied in single transaction, so when it fails no location is persisted.
+     *
+     * @param locations
+     * @throws SQLException when batch cannot be applied
+     */
     @Override
-    public long persistLocation(BackgroundLocation location, int maxRows) {
-        if (maxRows == 0) {
-            return -1;
-        }
-
-        long rowCount = getLocationsCount();
-
-        if (rowCount < maxRows) {
-            return persistLocation(location);
-        }
-
+    public void persistLocations(Collection<BackgroundLocation> locations) {
         ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
-
-        // TODO: move this logic as separate action somewhere else
-        // TODO: add db vaccum
-        if (rowCount > maxRows) {
-            // delete some locations to reduce their count to maxRows
-            String selection = new StringBuilder()
-                    .append(LocationEntry._ID)
-                    .append(" IN (SELECT ").append(LocationEntry._ID)
-                    .append(" FROM ").append(LocationEntry.TABLE_NAME)
-                    .append(" ORDER BY ").append(LocationEntry.COLUMN_NAME_TIME)
-                    .append(" LIMIT ?)")
-                    .toString();
-
+        for (BackgroundLocation location : locations) {
             operations.add(
-                    ContentProviderOperation.newDelete(mContentUri)
-                    .withSelection(selection, new String[] {(String.valueOf(rowCount - maxRows))})
-                    .build()
+                    ContentProviderOperation.newInsert(mContentUri)
+                        .withValues(location.toContentValues())
+                        .build()
             );
         }
 
-        operations.add(
-                ContentProviderOperation.newUpdate(getOldestLocationUri())
-                    .withValues(location.toContentValues())
-                    .build()
-        );
+        ContentProviderResult[] results = applyBatch(operations);
+        int i = 0;
+        for (BackgroundLocation location : locations) {
+            location.setLocationId(ContentUris.parseId(results[i++].uri));
+        }
+    }
 
-        try {
-            mResolver.applyBatch(mAuthority, operations);
-        } catch (Exception e) {
-            logger.error("Error persisting location (maxRows: {}): {}", maxRows, e.getMessage());
+    /**
+     * Persist location into ring of maxRows locations
+     *
+     * Location pending for post or sync is overwritten only when all of them are pending.
+     *
+     * @param location
+     * @param maxRows
+     * @return rowId or -1 when maxRows is 0
+     */
+    @Override
+    public long persistLocation(BackgroundLocation location, int maxRows) {
+        if (maxRows == 0) {
             return -1;
         }
 
-        return 0;
+        Uri locationUri = mResolver.insert(
+                LocationContentProvider.buildUriWithMaxRows(mAuthority, maxRows),
+                location.toContentValues()
+        );
+        return ContentUris.parseId(locationUri);
     }
 
     @Override
@@ -356,11 +354,38 @@ public class ContentProviderLocationDAO implements LocationDAO {
         mResolver.update(mContentUri, values, whereClause, whereArgs);
     }
 
+    @Override
+    public int updateLocationsForSync(Collection<Long> locationIds) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        for (Long locationId : locationIds) {
+            operations.add(
+                    ContentProviderOperation.newUpdate(LocationContentProvider.buildUriWithId(mAuthority, locationId))
+                        .withValue(LocationEntry.COLUMN_NAME_STATUS, BackgroundLocation.SYNC_PENDING)
+                        .build()
+            );
+        }
+
+        return getAffectedRows(applyBatch(operations));
+    }
+
     @Override
     public void deleteLocationById(long locationId) {
         mResolver.delete(LocationContentProvider.buildUriWithId(mAuthority, locationId), null, null);
     }
 
+    @Override
+    public int deleteLocationsById(Collection<Long> locationIds) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        for (Long locationId : locationIds) {
+            operations.add(
+                    ContentProviderOperation.newDelete(LocationContentProvider.buildUriWithId(mAuthority, locationId))
+                        .build()
+            );
+        }
+
+        return getAffectedRows(applyBatch(operations));
+    }
+
     @Override
     public BackgroundLocation deleteFirstUnpostedLocation() {
         BackgroundLocation location = getFirstUnpostedLocation();
@@ -379,9 +404,36 @@ public class ContentProviderLocationDAO implements LocationDAO {
         ContentValues values = new ContentValues();
         values.put(LocationEntry.COLUMN_NAME_STATUS, BackgroundLocation.SYNC_PENDING);
 
-        String whereClause = LocationEntry.COLUMN_NAME_STATUS + " = ?";
         String[] whereArgs = { String.valueOf(BackgroundLocation.POST_PENDING) };
 
-        return mResolver.update(mContentUri, values, whereClause, whereArgs);
+        return mResolver.update(mContentUri, values, LocationEntry.SQL_WHERE_STATUS, whereArgs);
+    }
+
+    /**
+     * Apply operations in single provider transaction
+     *
+     * Failure is propagated to the caller, which is responsible for retrying
+     * (eg. LocationJournal).
+     *
+     * @param operations
+     * @return results of operations
+     * @throws SQLException when batch cannot be applied
+     */
+    private ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations) {
+        try {
+            return mResolver.applyBatch(mAuthority, operations);
+        } catch (RemoteException e) {
+            throw new SQLException("Error applying " + operations.size() + " operations", e);
+        } catch (OperationApplicationException e) {
+            throw new SQLException("Error applying " + operations.size() + " operations", e);
+        }
+    }
+
+    private static int getAffectedRows(ContentProviderResult[] results) {
+        int rows = 0;
+        for (ContentProviderResult result : results) {
+            rows += result.count != null ? result.count : 0;
+        }
+        return rows;
     }
 }
@@ -1,10 +1,13 @@
 package com.marianhello.bgloc.data.provider;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.SQLException;
@@ -15,8 +18,11 @@ import android.text.TextUtils;
 
 import com.marianhello.bgloc.ResourceResolver;
 import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationRing;
 import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
 
+import java.util.ArrayList;
+
 /**
  * Content provider implementation based on
  * https://shellmonger.com/2017/06/28/android-notes-app-content-providers/
@@ -38,11 +44,32 @@ public class LocationContentProvider extends ContentProvider {
      */
     private static final int ONE_ITEM = 20;
 
+    /**
+     * Optional query parameter limiting number of returned rows
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+    /**
+     * Optional insert parameter, location is then written into ring of given capacity
+     */
+    public static final String QUERY_PARAMETER_MAX_ROWS = "max_rows";
+
     /**
      * The database helper for this content provider
      */
     private SQLiteOpenHelper mDatabaseHelper;
 
+    /**
+     * Location ring, created on first insert with max rows
+     */
+    private SQLiteLocationRing mLocationRing;
+
+    /**
+     * Set while batch operation is in progress on current thread.
+     * Listeners are notified only once after the batch instead of once per row.
+     */
+    private final ThreadLocal<Boolean> mIsInBatch = new ThreadLocal<Boolean>();
+
     /*
      * Initialize the UriMatcher with the URIs that this content provider handles
      *
@@ -125,7 +152,7 @@ public class LocationContentProvider extends ContentProvider {
             String sortOrder) {
 
         int uriType = sUriMatcher.match(uri);
-        SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
         SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
 
         switch (uriType) {
@@ -170,7 +197,8 @@ public class LocationContentProvider extends ContentProvider {
                 throw new IllegalArgumentException("Unsupported URI: " + uri);
         }
 
-        Cursor cursor = queryBuilder.query(db, projection, selection, selectionArgs, null, null, sortOrder);
+        String limit = uri.getQueryParameter(QUERY_PARAMETER_LIMIT);
+        Cursor cursor = queryBuilder.query(db, projection, selection, selectionArgs, null, null, sortOrder, limit);
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
         return cursor;
     }
@@ -178,6 +206,9 @@ public class LocationContentProvider extends ContentProvider {
     /**
      * Insert a new record into the database.
      *
+     * When uri has max rows parameter (see {@link #buildUriWithMaxRows(String, int)})
+     * record is written into location ring, which overwrites old records.
+     *
      * @param uri the base URI to insert at (must be a directory-based URI)
      * @param values the values to be inserted
      * @return the URI of the inserted item
@@ -187,13 +218,9 @@ public class LocationContentProvider extends ContentProvider {
         int uriType = sUriMatcher.match(uri);
         switch (uriType) {
             case ALL_ITEMS:
-                SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
-                long id = db.insert(
-                        LocationEntry.TABLE_NAME,
-                        null,
-                        values);
+                long id = insertLocation(uri, values);
                 if (id > 0) {
-                    Uri item = ContentUris.withAppendedId(uri, id);
+                    Uri item = ContentUris.withAppendedId(uri.buildUpon().clearQuery().build(), id);
                     notifyAllListeners(item);
                     return item;
                 }
@@ -276,11 +303,93 @@ public class LocationContentProvider extends ContentProvider {
         return rows;
     }
 
+    /**
+     * Insert multiple records in single database transaction.
+     *
+     * @param uri the base URI to insert at (must be a directory-based URI)
+     * @param values the values to be inserted
+     * @return the number of inserted records
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        int uriType = sUriMatcher.match(uri);
+        switch (uriType) {
+            case ALL_ITEMS:
+                SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+                int rows = 0;
+                db.beginTransactionNonExclusive();
+                try {
+                    for (ContentValues value : values) {
+                        if (insertLocation(uri, value) > 0) {
+                            rows++;
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (rows > 0) {
+                    notifyAllListeners(uri);
+                }
+                return rows;
+            default:
+                throw new IllegalArgumentException("Unsupported URI: " + uri);
+        }
+    }
+
+    /**
+     * Apply all operations in single database transaction.
+     * Either all operations are applied or none.
+     *
+     * @param operations the operations to apply
+     * @return the results of the applications
+     * @throws OperationApplicationException if any operation fails
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        ContentProviderResult[] results;
+        mIsInBatch.set(true);
+        db.beginTransactionNonExclusive();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mIsInBatch.set(false);
+        }
+        if (results.length > 0) {
+            notifyAllListeners(getContentUri(operations.get(0).getUri().getAuthority()));
+        }
+        return results;
+    }
+
+    private long insertLocation(Uri uri, ContentValues values) {
+        String maxRows = uri.getQueryParameter(QUERY_PARAMETER_MAX_ROWS);
+        if (maxRows != null) {
+            return getLocationRing().persist(values, Integer.parseInt(maxRows));
+        }
+
+        SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        return db.insert(LocationEntry.TABLE_NAME, null, values);
+    }
+
+    private synchronized SQLiteLocationRing getLocationRing() {
+        if (mLocationRing == null) {
+            mLocationRing = new SQLiteLocationRing(mDatabaseHelper.getWritableDatabase());
+        }
+        return mLocationRing;
+    }
+
     /**
      * Notify all listeners that the specified URI has changed
      * @param uri the URI that changed
      */
     private void notifyAllListeners(Uri uri) {
+        if (Boolean.TRUE.equals(mIsInBatch.get())) {
+            return;
+        }
         ContentResolver resolver = getContext().getContentResolver();
         if (resolver != null) {
             resolver.notifyChange(uri, null);
@@ -317,5 +426,31 @@ public class LocationContentProvider extends ContentProvider {
                 .appendPath(Long.toString(id))
                 .build();
     }
-}
 
+    /**
+     * Builds a URI of location table which limits number of returned rows.
+     *
+     * @param authority The authority of the locations content provider
+     * @param limit Maximum number of rows returned by query
+     * @return Uri to query at most limit location entries
+     */
+    public static Uri buildUriWithLimit(String authority, int limit) {
+        return getContentUri(authority).buildUpon()
+                .appendQueryParameter(QUERY_PARAMETER_LIMIT, Integer.toString(limit))
+                .build();
+    }
+
+    /**
+     * Builds a URI of location table, which keeps at most maxRows locations
+     * inserted through it. Oldest ones are overwritten by new inserts.
+     *
+     * @param authority The authority of the locations content provider
+     * @param maxRows Capacity of location ring
+     * @return Uri to insert location into ring
+     */
+    public static Uri buildUriWithMaxRows(String authority, int maxRows) {
+        return getContentUri(authority).buildUpon()
+                .appendQueryParameter(QUERY_PARAMETER_MAX_ROWS, Integer.toString(maxRows))
+                .build();
+    }
+}
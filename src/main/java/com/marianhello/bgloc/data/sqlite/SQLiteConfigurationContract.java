@@ -40,6 +40,15 @@ public final class SQLiteConfigurationContract {
         public static final String COLUMN_NAME_HEADERS = "http_headers";
         public static final String COLUMN_NAME_MAX_LOCATIONS = "max_locations";
         public static final String COLUMN_NAME_TEMPLATE = "template";
+        public static final String COLUMN_NAME_SYNC_BATCH_SIZE = "sync_batch_size";
+        public static final String COLUMN_NAME_HTTP_COMPRESSION = "http_compression";
+        public static final String COLUMN_NAME_POST_BATCH_SIZE = "post_batch_size";
+        public static final String COLUMN_NAME_POST_BATCH_DELAY = "post_batch_delay";
+        public static final String COLUMN_NAME_POST_BACKLOG_BUDGET = "post_backlog_budget";
+        public static final String COLUMN_NAME_PAYLOAD_FORMAT = "payload_format";
+        public static final String COLUMN_NAME_LOCATION_FILTER_ENABLED = "location_filter_enabled";
+        public static final String COLUMN_NAME_SIMPLIFY_TOLERANCE = "simplify_tolerance";
+        public static final String COLUMN_NAME_SIMPLIFY_MAX_DELAY = "simplify_max_delay";
 
         public static final String SQL_CREATE_CONFIG_TABLE =
                 "CREATE TABLE " + ConfigurationEntry.TABLE_NAME + " (" +
@@ -67,7 +76,16 @@ public final class SQLiteConfigurationContract {
                         ConfigurationEntry.COLUMN_NAME_SYNC_THRESHOLD + INTEGER_TYPE + COMMA_SEP +
                         ConfigurationEntry.COLUMN_NAME_HEADERS + TEXT_TYPE + COMMA_SEP +
                         ConfigurationEntry.COLUMN_NAME_MAX_LOCATIONS + INTEGER_TYPE + COMMA_SEP +
-                        ConfigurationEntry.COLUMN_NAME_TEMPLATE + TEXT_TYPE +
+                        ConfigurationEntry.COLUMN_NAME_TEMPLATE + TEXT_TYPE + COMMA_SEP +
+                        ConfigurationEntry.COLUMN_NAME_SYNC_BATCH_SIZE + INTEGER_TYPE + COMMA_SEP +
+                        ConfigurationEntry.COLUMN_NAME_HTTP_COMPRESSION + INTEGER_TYPE + COMMA_SEP +
+                        ConfigurationEntry.COLUMN_NAME_POST_BATCH_SIZE + INTEGER_TYPE + COMMA_SEP +
+                        ConfigurationEntry.COLUMN_NAME_POST_BATCH_DELAY + INTEGER_TYPE + COMMA_SEP +
+                        ConfigurationEntry.COLUMN_NAME_POST_BACKLOG_BUDGET + INTEGER_TYPE + COMMA_SEP +
+                        ConfigurationEntry.COLUMN_NAME_PAYLOAD_FORMAT + TEXT_TYPE + COMMA_SEP +
+                        ConfigurationEntry.COLUMN_NAME_LOCATION_FILTER_ENABLED + INTEGER_TYPE + COMMA_SEP +
+                        ConfigurationEntry.COLUMN_NAME_SIMPLIFY_TOLERANCE + REAL_TYPE + COMMA_SEP +
+                        ConfigurationEntry.COLUMN_NAME_SIMPLIFY_MAX_DELAY + INTEGER_TYPE +
                         " )";
 
         public static final String SQL_DROP_CONFIG_TABLE =
@@ -56,7 +56,16 @@ public class SQLiteConfigurationDAO implements ConfigurationDAO {
       ConfigurationEntry.COLUMN_NAME_SYNC_THRESHOLD,
       ConfigurationEntry.COLUMN_NAME_HEADERS,
       ConfigurationEntry.COLUMN_NAME_MAX_LOCATIONS,
-      ConfigurationEntry.COLUMN_NAME_TEMPLATE
+      ConfigurationEntry.COLUMN_NAME_TEMPLATE,
+      ConfigurationEntry.COLUMN_NAME_SYNC_BATCH_SIZE,
+      ConfigurationEntry.COLUMN_NAME_HTTP_COMPRESSION,
+      ConfigurationEntry.COLUMN_NAME_POST_BATCH_SIZE,
+      ConfigurationEntry.COLUMN_NAME_POST_BATCH_DELAY,
+      ConfigurationEntry.COLUMN_NAME_POST_BACKLOG_BUDGET,
+      ConfigurationEntry.COLUMN_NAME_PAYLOAD_FORMAT,
+      ConfigurationEntry.COLUMN_NAME_LOCATION_FILTER_ENABLED,
+      ConfigurationEntry.COLUMN_NAME_SIMPLIFY_TOLERANCE,
+      ConfigurationEntry.COLUMN_NAME_SIMPLIFY_MAX_DELAY
     };
 
     String whereClause = null;
@@ -123,6 +132,31 @@ public class SQLiteConfigurationDAO implements ConfigurationDAO {
     config.setHttpHeaders(new JSONObject(c.getString(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_HEADERS))));
     config.setMaxLocations(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_MAX_LOCATIONS)));
     config.setTemplate(LocationTemplateFactory.fromJSONString(c.getString(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_TEMPLATE))));
+    if (!c.isNull(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_SYNC_BATCH_SIZE))) {
+      config.setSyncBatchSize(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_SYNC_BATCH_SIZE)));
+    }
+    if (!c.isNull(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_HTTP_COMPRESSION))) {
+      config.setHttpCompression(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_HTTP_COMPRESSION)) == 1);
+    }
+    if (!c.isNull(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_POST_BATCH_SIZE))) {
+      config.setPostBatchSize(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_POST_BATCH_SIZE)));
+    }
+    if (!c.isNull(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_POST_BATCH_DELAY))) {
+      config.setPostBatchDelay(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_POST_BATCH_DELAY)));
+    }
+    if (!c.isNull(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_POST_BACKLOG_BUDGET))) {
+      config.setPostBacklogBudget(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_POST_BACKLOG_BUDGET)));
+    }
+    config.setPayloadFormat(c.getString(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_PAYLOAD_FORMAT)));
+    if (!c.isNull(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_LOCATION_FILTER_ENABLED))) {
+      config.setLocationFilterEnabled(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_LOCATION_FILTER_ENABLED)) == 1);
+    }
+    if (!c.isNull(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_SIMPLIFY_TOLERANCE))) {
+      config.setSimplifyTolerance(c.getFloat(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_SIMPLIFY_TOLERANCE)));
+    }
+    if (!c.isNull(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_SIMPLIFY_MAX_DELAY))) {
+      config.setSimplifyMaxDelay(c.getInt(c.getColumnIndex(ConfigurationEntry.COLUMN_NAME_SIMPLIFY_MAX_DELAY)));
+    }
 
     return config;
   }
@@ -154,6 +188,15 @@ public class SQLiteConfigurationDAO implements ConfigurationDAO {
     values.put(ConfigurationEntry.COLUMN_NAME_HEADERS, new JSONObject(config.getHttpHeaders()).toString());
     values.put(ConfigurationEntry.COLUMN_NAME_MAX_LOCATIONS, config.getMaxLocations());
     values.put(ConfigurationEntry.COLUMN_NAME_TEMPLATE, config.hasTemplate() ? config.getTemplate().toString() : null);
+    values.put(ConfigurationEntry.COLUMN_NAME_SYNC_BATCH_SIZE, config.getSyncBatchSize());
+    values.put(ConfigurationEntry.COLUMN_NAME_HTTP_COMPRESSION, (config.getHttpCompression() == Boolean.TRUE) ? 1 : 0);
+    values.put(ConfigurationEntry.COLUMN_NAME_POST_BATCH_SIZE, config.getPostBatchSize());
+    values.put(ConfigurationEntry.COLUMN_NAME_POST_BATCH_DELAY, config.getPostBatchDelay());
+    values.put(ConfigurationEntry.COLUMN_NAME_POST_BACKLOG_BUDGET, config.getPostBacklogBudget());
+    values.put(ConfigurationEntry.COLUMN_NAME_PAYLOAD_FORMAT, config.getPayloadFormat());
+    values.put(ConfigurationEntry.COLUMN_NAME_LOCATION_FILTER_ENABLED, (config.getLocationFilterEnabled() == Boolean.TRUE) ? 1 : 0);
+    values.put(ConfigurationEntry.COLUMN_NAME_SIMPLIFY_TOLERANCE, config.getSimplifyTolerance());
+    values.put(ConfigurationEntry.COLUMN_NAME_SIMPLIFY_MAX_DELAY, config.getSimplifyMaxDelay());
 
     return values;
   }
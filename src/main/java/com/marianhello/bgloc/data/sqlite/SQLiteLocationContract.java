@@ -68,6 +68,42 @@ public final class SQLiteLocationContract {
         public static final String SQL_CREATE_LOCATION_TABLE_BATCH_ID_IDX =
                 "CREATE INDEX batch_id_idx ON " + LocationEntry.TABLE_NAME + " (" + LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + ")";
 
+        // partial indexes are not supported by sqlite bundled with older android versions
+        public static final String SQL_CREATE_LOCATION_TABLE_STATUS_TIME_IDX =
+                "CREATE INDEX status_time_idx ON " + LocationEntry.TABLE_NAME + " (" +
+                        LocationEntry.COLUMN_NAME_STATUS + COMMA_SEP +
+                        LocationEntry.COLUMN_NAME_TIME + ")";
+
+        public static final String SQL_CREATE_LOCATION_TABLE_STATUS_BATCH_ID_IDX =
+                "CREATE INDEX status_batch_id_idx ON " + LocationEntry.TABLE_NAME + " (" +
+                        LocationEntry.COLUMN_NAME_STATUS + COMMA_SEP +
+                        LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + COMMA_SEP +
+                        LocationEntry.COLUMN_NAME_TIME + ")";
+
+        /**
+         * Selection of locations by status
+         */
+        public static final String SQL_WHERE_STATUS = COLUMN_NAME_STATUS + " = ?";
+
+        /**
+         * Selection of locations by status following given id (keyset pagination)
+         */
+        public static final String SQL_WHERE_STATUS_AFTER_ID =
+                SQL_WHERE_STATUS + " AND " + _ID + " > ?";
+
+        /**
+         * Selection of locations by status, which are not part of batch started after given time
+         */
+        public static final String SQL_WHERE_STATUS_BEFORE_BATCH =
+                SQL_WHERE_STATUS + " AND ( " +
+                        COLUMN_NAME_BATCH_START_MILLIS + " IS NULL OR " +
+                        COLUMN_NAME_BATCH_START_MILLIS + " < ? )";
+
+        /**
+         * Selection of locations by batch start
+         */
+        public static final String SQL_WHERE_BATCH_START = COLUMN_NAME_BATCH_START_MILLIS + " = ?";
+
         /**
          * The directory base-path
          */
@@ -103,4 +139,46 @@ public final class SQLiteLocationContract {
                 COLUMN_NAME_MOCK_FLAGS
         };
     }
+
+    /**
+     * Slots of fixed size location ring
+     *
+     * Location stored with maxRows limit goes to slot seq % maxRows,
+     * where seq is sequence number of the write. Slot points to location row,
+     * which is overwritten in place when slot is reused.
+     */
+    public static abstract class LocationSlotEntry {
+        public static final String TABLE_NAME = "location_slot";
+        public static final String COLUMN_NAME_SLOT = "slot";
+        public static final String COLUMN_NAME_SEQ = "seq";
+        public static final String COLUMN_NAME_LOCATION_ID = "location_id";
+
+        public static final String SQL_CREATE_LOCATION_SLOT_TABLE =
+                "CREATE TABLE " + LocationSlotEntry.TABLE_NAME + " (" +
+                        LocationSlotEntry.COLUMN_NAME_SLOT + " INTEGER PRIMARY KEY," +
+                        LocationSlotEntry.COLUMN_NAME_SEQ + INTEGER_TYPE + COMMA_SEP +
+                        LocationSlotEntry.COLUMN_NAME_LOCATION_ID + INTEGER_TYPE +
+                        " )";
+
+        public static final String SQL_DROP_LOCATION_SLOT_TABLE =
+                "DROP TABLE IF EXISTS " + LocationSlotEntry.TABLE_NAME;
+
+        public static final String SQL_CREATE_LOCATION_SLOT_TABLE_LOCATION_ID_IDX =
+                "CREATE INDEX location_slot_location_id_idx ON " + LocationSlotEntry.TABLE_NAME + " (" +
+                        LocationSlotEntry.COLUMN_NAME_LOCATION_ID + ")";
+
+        /**
+         * Existing locations become ring members in order they were stored,
+         * slots beyond ring capacity are trimmed on first write
+         */
+        public static final String SQL_FILL_LOCATION_SLOT_TABLE =
+                "INSERT INTO " + LocationSlotEntry.TABLE_NAME + " (" +
+                        LocationSlotEntry.COLUMN_NAME_SLOT + COMMA_SEP +
+                        LocationSlotEntry.COLUMN_NAME_SEQ + COMMA_SEP +
+                        LocationSlotEntry.COLUMN_NAME_LOCATION_ID + ")" +
+                        " SELECT " + LocationEntry._ID + COMMA_SEP +
+                        LocationEntry._ID + COMMA_SEP +
+                        LocationEntry._ID +
+                        " FROM " + LocationEntry.TABLE_NAME;
+    }
 }
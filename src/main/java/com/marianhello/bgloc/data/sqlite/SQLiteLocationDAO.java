@@ -5,9 +5,11 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
 
 import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.LocationCursorReader;
 import com.marianhello.bgloc.data.LocationDAO;
 import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
 import ru.andremoniy.sqlbuilder.SqlExpression;
@@ -17,11 +19,49 @@ import java.util.ArrayList;
 import java.util.Collection;
 
 public class SQLiteLocationDAO implements LocationDAO {
+  static final String[] INSERT_COLUMNS = {
+          LocationEntry.COLUMN_NAME_PROVIDER,
+          LocationEntry.COLUMN_NAME_TIME,
+          LocationEntry.COLUMN_NAME_ACCURACY,
+          LocationEntry.COLUMN_NAME_SPEED,
+          LocationEntry.COLUMN_NAME_BEARING,
+          LocationEntry.COLUMN_NAME_ALTITUDE,
+          LocationEntry.COLUMN_NAME_RADIUS,
+          LocationEntry.COLUMN_NAME_LATITUDE,
+          LocationEntry.COLUMN_NAME_LONGITUDE,
+          LocationEntry.COLUMN_NAME_HAS_ACCURACY,
+          LocationEntry.COLUMN_NAME_HAS_SPEED,
+          LocationEntry.COLUMN_NAME_HAS_BEARING,
+          LocationEntry.COLUMN_NAME_HAS_ALTITUDE,
+          LocationEntry.COLUMN_NAME_HAS_RADIUS,
+          LocationEntry.COLUMN_NAME_LOCATION_PROVIDER,
+          LocationEntry.COLUMN_NAME_BATCH_START_MILLIS,
+          LocationEntry.COLUMN_NAME_STATUS,
+          LocationEntry.COLUMN_NAME_MOCK_FLAGS
+  };
+
+  static final String SQL_INSERT_LOCATION = new StringBuilder("INSERT INTO ")
+          .append(LocationEntry.TABLE_NAME).append(" (")
+          .append(TextUtils.join(",", INSERT_COLUMNS))
+          .append(") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)")
+          .toString();
+
+  static final String SQL_OVERWRITE_LOCATION = new StringBuilder("UPDATE ")
+          .append(LocationEntry.TABLE_NAME).append(" SET ")
+          .append(TextUtils.join("= ?,", INSERT_COLUMNS)).append("= ?")
+          .append(" WHERE ").append(LocationEntry._ID).append("= ?")
+          .toString();
+
+  private static final String SQL_UPDATE_LOCATION_STATUS = new StringBuilder("UPDATE ")
+          .append(LocationEntry.TABLE_NAME)
+          .append(" SET ").append(LocationEntry.COLUMN_NAME_STATUS).append("= ?")
+          .append(" WHERE ").append(LocationEntry._ID).append("= ?")
+          .toString();
+
   private SQLiteDatabase db;
 
   public SQLiteLocationDAO(Context context) {
-    SQLiteOpenHelper helper = SQLiteOpenHelper.getHelper(context);
-    this.db = helper.getWritableDatabase();
+    this(SQLiteOpenHelper.getHelper(context).getWritableDatabase());
   }
 
   public SQLiteLocationDAO(SQLiteDatabase db) {
@@ -36,7 +76,7 @@ public class SQLiteLocationDAO implements LocationDAO {
    * @return collection of locations
      */
   private Collection<BackgroundLocation> getLocations(String whereClause, String[] whereArgs) {
-    Collection<BackgroundLocation> locations = new ArrayList<BackgroundLocation>();
+    Collection<BackgroundLocation> locations;
 
     String[] columns = queryColumns();
     String groupBy = null;
@@ -54,8 +94,10 @@ public class SQLiteLocationDAO implements LocationDAO {
           having,                    // don't filter by row groups
           orderBy                    // The sort order
       );
+      LocationCursorReader reader = new LocationCursorReader(cursor);
+      locations = new ArrayList<BackgroundLocation>(cursor.getCount());
       while (cursor.moveToNext()) {
-        locations.add(hydrate(cursor));
+        locations.add(reader.read(cursor));
       }
     } finally {
       if (cursor != null) {
@@ -108,22 +150,36 @@ public class SQLiteLocationDAO implements LocationDAO {
     return location;
   }
 
-  public BackgroundLocation getFirstUnpostedLocation() {
+  /**
+   * Build query of oldest location pending for post
+   *
+   * @param columns
+   * @param excludedId id of location to skip or null
+   * @return sql statement
+   */
+  public static String buildUnpostedLocationQuery(String[] columns, Long excludedId) {
     SqlSelectStatement subsql = new SqlSelectStatement();
     subsql.column(new SqlExpression(String.format("MIN(%s)", LocationEntry._ID)), LocationEntry._ID);
     subsql.from(LocationEntry.TABLE_NAME);
     subsql.where(LocationEntry.COLUMN_NAME_STATUS, SqlExpression.SqlOperatorEqualTo, BackgroundLocation.POST_PENDING);
+    if (excludedId != null) {
+      subsql.where(LocationEntry._ID, SqlExpression.SqlOperatorNotEqualTo, excludedId);
+    }
     subsql.orderBy(LocationEntry.COLUMN_NAME_TIME);
 
     SqlSelectStatement sql = new SqlSelectStatement();
-    sql.columns(queryColumns());
+    sql.columns(columns);
     sql.from(LocationEntry.TABLE_NAME);
     sql.where(LocationEntry._ID, SqlExpression.SqlOperatorEqualTo, subsql);
 
+    return sql.statement();
+  }
+
+  public BackgroundLocation getFirstUnpostedLocation() {
     BackgroundLocation location = null;
     Cursor cursor = null;
     try {
-      cursor = db.rawQuery(sql.statement(), new String[]{});
+      cursor = db.rawQuery(buildUnpostedLocationQuery(queryColumns(), null), new String[]{});
       while (cursor.moveToNext()) {
         location = hydrate(cursor);
         if (!cursor.isLast()) {
@@ -140,22 +196,10 @@ public class SQLiteLocationDAO implements LocationDAO {
   }
 
   public BackgroundLocation getNextUnpostedLocation(long fromId) {
-    SqlSelectStatement subsql = new SqlSelectStatement();
-    subsql.column(new SqlExpression(String.format("MIN(%s)", LocationEntry._ID)), LocationEntry._ID);
-    subsql.from(LocationEntry.TABLE_NAME);
-    subsql.where(LocationEntry.COLUMN_NAME_STATUS, SqlExpression.SqlOperatorEqualTo, BackgroundLocation.POST_PENDING);
-    subsql.where(LocationEntry._ID, SqlExpression.SqlOperatorNotEqualTo, fromId);
-    subsql.orderBy(LocationEntry.COLUMN_NAME_TIME);
-
-    SqlSelectStatement sql = new SqlSelectStatement();
-    sql.columns(queryColumns());
-    sql.from(LocationEntry.TABLE_NAME);
-    sql.where(LocationEntry._ID, SqlExpression.SqlOperatorEqualTo, subsql);
-
     BackgroundLocation location = null;
     Cursor cursor = null;
     try {
-      cursor = db.rawQuery(sql.statement(), new String[]{});
+      cursor = db.rawQuery(buildUnpostedLocationQuery(queryColumns(), fromId), new String[]{});
       while (cursor.moveToNext()) {
         location = hydrate(cursor);
         if (!cursor.isLast()) {
@@ -172,24 +216,55 @@ public class SQLiteLocationDAO implements LocationDAO {
   }
 
   public long getUnpostedLocationsCount() {
-    String whereClause = SQLiteLocationContract.LocationEntry.COLUMN_NAME_STATUS + " = ?";
     String[] whereArgs = { String.valueOf(BackgroundLocation.POST_PENDING) };
 
-    return DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME, whereClause, whereArgs);
+    return DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME, LocationEntry.SQL_WHERE_STATUS, whereArgs);
   }
 
   public long getLocationsForSyncCount(long millisSinceLastBatch) {
-    String whereClause = TextUtils.join("", new String[]{
-            SQLiteLocationContract.LocationEntry.COLUMN_NAME_STATUS + " = ? AND ( ",
-            SQLiteLocationContract.LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + " IS NULL OR ",
-            SQLiteLocationContract.LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + " < ? )",
-    });
     String[] whereArgs = {
             String.valueOf(BackgroundLocation.SYNC_PENDING),
             String.valueOf(millisSinceLastBatch)
     };
 
-    return DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME, whereClause, whereArgs);
+    return DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME, LocationEntry.SQL_WHERE_STATUS_BEFORE_BATCH, whereArgs);
+  }
+
+  /**
+   * Returns page of locations pending for sync
+   *
+   * @param fromId page starts after location with this id
+   * @param limit maximum number of locations in page
+   * @return locations ordered by id
+   */
+  public Collection<BackgroundLocation> getLocationsForSync(long fromId, int limit) {
+    Collection<BackgroundLocation> locations;
+    String[] whereArgs = { String.valueOf(BackgroundLocation.SYNC_PENDING), String.valueOf(fromId) };
+
+    Cursor cursor = null;
+    try {
+      cursor = db.query(
+          LocationEntry.TABLE_NAME,
+          queryColumns(),
+          LocationEntry.SQL_WHERE_STATUS_AFTER_ID,
+          whereArgs,
+          null,
+          null,
+          LocationEntry._ID + " ASC",
+          String.valueOf(limit)
+      );
+      LocationCursorReader reader = new LocationCursorReader(cursor);
+      locations = new ArrayList<BackgroundLocation>(cursor.getCount());
+      while (cursor.moveToNext()) {
+        locations.add(reader.read(cursor));
+      }
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+
+    return locations;
   }
 
   /**
@@ -199,10 +274,35 @@ public class SQLiteLocationDAO implements LocationDAO {
    * @return rowId or -1 when error occured
    */
   public long persistLocation(BackgroundLocation location) {
-    ContentValues values = getContentValues(location);
-    long rowId = db.insertOrThrow(LocationEntry.TABLE_NAME, LocationEntry.COLUMN_NAME_NULLABLE, values);
+    SQLiteStatement stmt = db.compileStatement(SQL_INSERT_LOCATION);
+    try {
+      bindLocation(stmt, location);
+      return stmt.executeInsert();
+    } finally {
+      stmt.close();
+    }
+  }
 
-    return rowId;
+  /**
+   * Persist locations into database in single transaction
+   *
+   * Each location will have locationId set to its rowId.
+   *
+   * @param locations
+   */
+  public void persistLocations(Collection<BackgroundLocation> locations) {
+    SQLiteStatement stmt = db.compileStatement(SQL_INSERT_LOCATION);
+    db.beginTransactionNonExclusive();
+    try {
+      for (BackgroundLocation location : locations) {
+        bindLocation(stmt, location);
+        location.setLocationId(stmt.executeInsert());
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+      stmt.close();
+    }
   }
 
   /**
@@ -210,7 +310,8 @@ public class SQLiteLocationDAO implements LocationDAO {
    *
    * Method will ensure that there will be no more records than maxRows.
    * Instead old records will be replaced with newer ones.
-   * If maxRows will change in time, method will delete excess records and vacuum table.
+   * If maxRows will change in time, method will delete excess records.
+   * Freed pages are not reclaimed here, see {@link SQLiteOpenHelper#reclaimFreeSpace()}.
    *
    * @param location
    * @param maxRows
@@ -222,104 +323,62 @@ public class SQLiteLocationDAO implements LocationDAO {
     }
 
     String sql = null;
-    Boolean shouldVacuum = false;
 
     long rowCount = DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME);
 
     if (rowCount < maxRows) {
-      ContentValues values = getContentValues(location);
-      return db.insertOrThrow(LocationEntry.TABLE_NAME, LocationEntry.COLUMN_NAME_NULLABLE, values);
+      return persistLocation(location);
     }
 
+    long locationId;
+    SQLiteStatement stmt = db.compileStatement(SQL_OVERWRITE_LOCATION);
     db.beginTransactionNonExclusive();
+    try {
+      if (rowCount > maxRows) {
+        sql = new StringBuilder("DELETE FROM ")
+                .append(LocationEntry.TABLE_NAME)
+                .append(" WHERE ").append(LocationEntry._ID)
+                .append(" IN (SELECT ").append(LocationEntry._ID)
+                .append(" FROM ").append(LocationEntry.TABLE_NAME)
+                .append(" ORDER BY ").append(LocationEntry.COLUMN_NAME_TIME)
+                .append(" LIMIT ?)")
+                .toString();
+        db.execSQL(sql, new Object[] {(rowCount - maxRows)});
+      }
 
-    if (rowCount > maxRows) {
-      sql = new StringBuilder("DELETE FROM ")
-              .append(LocationEntry.TABLE_NAME)
-              .append(" WHERE ").append(LocationEntry._ID)
-              .append(" IN (SELECT ").append(LocationEntry._ID)
-              .append(" FROM ").append(LocationEntry.TABLE_NAME)
-              .append(" ORDER BY ").append(LocationEntry.COLUMN_NAME_TIME)
-              .append(" LIMIT ?)")
-              .toString();
-      db.execSQL(sql, new Object[] {(rowCount - maxRows)});
-      shouldVacuum = true;
-    }
+      // get oldest location id to be overwritten
+      Cursor cursor = null;
+      try {
+        cursor = db.query(
+                LocationEntry.TABLE_NAME,
+                new String[] { "min(" + LocationEntry._ID + ")" },
+                TextUtils.join("", new String[]{
+                        LocationEntry.COLUMN_NAME_TIME,
+                        "= (SELECT min(",
+                        LocationEntry.COLUMN_NAME_TIME,
+                        ") FROM ",
+                        LocationEntry.TABLE_NAME,
+                        ")"
+                }),
+                null, null, null, null);
+        cursor.moveToFirst();
+        locationId = cursor.getLong(0);
+      } finally {
+        if (cursor != null) {
+          cursor.close();
+        }
+      }
 
-    // get oldest location id to be overwritten
-    Cursor cursor = null;
-    long locationId;
-    try {
-      cursor = db.query(
-              LocationEntry.TABLE_NAME,
-              new String[] { "min(" + LocationEntry._ID + ")" },
-              TextUtils.join("", new String[]{
-                      LocationEntry.COLUMN_NAME_TIME,
-                      "= (SELECT min(",
-                      LocationEntry.COLUMN_NAME_TIME,
-                      ") FROM ",
-                      LocationEntry.TABLE_NAME,
-                      ")"
-              }),
-              null, null, null, null);
-      cursor.moveToFirst();
-      locationId = cursor.getLong(0);
+      bindLocation(stmt, location);
+      stmt.bindLong(INSERT_COLUMNS.length + 1, locationId);
+      stmt.executeUpdateDelete();
+
+      db.setTransactionSuccessful();
     } finally {
-      if (cursor != null) {
-        cursor.close();
-      }
+      db.endTransaction();
+      stmt.close();
     }
 
-    sql = new StringBuilder("UPDATE ")
-            .append(LocationEntry.TABLE_NAME).append(" SET ")
-            .append(LocationEntry.COLUMN_NAME_PROVIDER).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_TIME).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_ACCURACY).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_SPEED).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_BEARING).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_ALTITUDE).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_RADIUS).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_LATITUDE).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_LONGITUDE).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_HAS_ACCURACY).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_HAS_SPEED).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_HAS_BEARING).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_HAS_ALTITUDE).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_HAS_RADIUS).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_LOCATION_PROVIDER).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_BATCH_START_MILLIS).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_STATUS).append("= ?,")
-            .append(LocationEntry.COLUMN_NAME_MOCK_FLAGS).append("= ?")
-            .append(" WHERE ").append(LocationEntry._ID)
-            .append("= ?")
-            .toString();
-    db.execSQL(sql, new Object[] {
-            location.getProvider(),
-            location.getTime(),
-            location.getAccuracy(),
-            location.getSpeed(),
-            location.getBearing(),
-            location.getAltitude(),
-            location.getRadius(),
-            location.getLatitude(),
-            location.getLongitude(),
-            location.hasAccuracy() ? 1 : 0,
-            location.hasSpeed() ? 1 : 0,
-            location.hasBearing() ? 1 : 0,
-            location.hasAltitude() ? 1 : 0,
-            location.hasRadius() ? 1 : 0,
-            location.getLocationProvider(),
-            location.getBatchStartMillis(),
-            location.getStatus(),
-            location.getMockFlags(),
-            locationId
-    });
-
-    db.setTransactionSuccessful();
-    db.endTransaction();
-
-    if (shouldVacuum) { db.execSQL("VACUUM"); }
-
     return locationId;
   }
 
@@ -334,13 +393,7 @@ public class SQLiteLocationDAO implements LocationDAO {
       return;
     }
 
-    ContentValues values = new ContentValues();
-    values.put(LocationEntry.COLUMN_NAME_STATUS, BackgroundLocation.DELETED);
-
-    String whereClause = LocationEntry._ID + " = ?";
-    String[] whereArgs = { String.valueOf(locationId) };
-
-    db.update(LocationEntry.TABLE_NAME, values, whereClause, whereArgs);
+    updateLocationStatus(locationId, BackgroundLocation.DELETED);
   }
 
   public BackgroundLocation deleteFirstUnpostedLocation() {
@@ -369,13 +422,59 @@ public class SQLiteLocationDAO implements LocationDAO {
   }
 
   public void updateLocationForSync(long locationId) {
-    ContentValues values = new ContentValues();
-    values.put(LocationEntry.COLUMN_NAME_STATUS, BackgroundLocation.SYNC_PENDING);
+    updateLocationStatus(locationId, BackgroundLocation.SYNC_PENDING);
+  }
 
-    String whereClause = LocationEntry._ID + " = ?";
-    String[] whereArgs = { String.valueOf(locationId) };
+  /**
+   * Mark locations for sync in single transaction
+   *
+   * @param locationIds
+   * @return number of updated locations
+   */
+  public int updateLocationsForSync(Collection<Long> locationIds) {
+    return updateLocationsStatus(locationIds, BackgroundLocation.SYNC_PENDING);
+  }
 
-    db.update(LocationEntry.TABLE_NAME, values, whereClause, whereArgs);
+  /**
+   * Delete locations by given locationIds in single transaction
+   *
+   * Note: locations are not actually deleted only flagged as non valid
+   * @param locationIds
+   * @return number of deleted locations
+   */
+  public int deleteLocationsById(Collection<Long> locationIds) {
+    return updateLocationsStatus(locationIds, BackgroundLocation.DELETED);
+  }
+
+  private int updateLocationsStatus(Collection<Long> locationIds, int status) {
+    SQLiteStatement stmt = db.compileStatement(SQL_UPDATE_LOCATION_STATUS);
+    int rows = 0;
+
+    db.beginTransactionNonExclusive();
+    try {
+      for (Long locationId : locationIds) {
+        stmt.bindLong(1, status);
+        stmt.bindLong(2, locationId);
+        rows += stmt.executeUpdateDelete();
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+      stmt.close();
+    }
+
+    return rows;
+  }
+
+  private void updateLocationStatus(long locationId, int status) {
+    SQLiteStatement stmt = db.compileStatement(SQL_UPDATE_LOCATION_STATUS);
+    try {
+      stmt.bindLong(1, status);
+      stmt.bindLong(2, locationId);
+      stmt.executeUpdateDelete();
+    } finally {
+      stmt.close();
+    }
   }
 
   /**
@@ -399,63 +498,47 @@ public class SQLiteLocationDAO implements LocationDAO {
     ContentValues values = new ContentValues();
     values.put(LocationEntry.COLUMN_NAME_STATUS, BackgroundLocation.SYNC_PENDING);
 
-    String whereClause = LocationEntry.COLUMN_NAME_STATUS + " = ?";
     String[] whereArgs = { String.valueOf(BackgroundLocation.POST_PENDING) };
 
-    return db.update(LocationEntry.TABLE_NAME, values, whereClause, whereArgs);
+    return db.update(LocationEntry.TABLE_NAME, values, LocationEntry.SQL_WHERE_STATUS, whereArgs);
   }
 
   private BackgroundLocation hydrate(Cursor c) {
-    BackgroundLocation l = new BackgroundLocation(c.getString(c.getColumnIndex(LocationEntry.COLUMN_NAME_PROVIDER)));
-    l.setTime(c.getLong(c.getColumnIndex(LocationEntry.COLUMN_NAME_TIME)));
-    if (c.getInt(c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_ACCURACY)) == 1) {
-      l.setAccuracy(c.getFloat(c.getColumnIndex(LocationEntry.COLUMN_NAME_ACCURACY)));
-    }
-    if (c.getInt(c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_SPEED)) == 1) {
-      l.setSpeed(c.getFloat(c.getColumnIndex(LocationEntry.COLUMN_NAME_SPEED)));
-    }
-    if (c.getInt(c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_BEARING)) == 1) {
-      l.setBearing(c.getFloat(c.getColumnIndex(LocationEntry.COLUMN_NAME_BEARING)));
+    return new LocationCursorReader(c).read(c);
+  }
+
+  /**
+   * Bind location values to statement in order of INSERT_COLUMNS
+   *
+   * @param stmt
+   * @param l
+   */
+  private void bindLocation(SQLiteStatement stmt, BackgroundLocation l) {
+    stmt.clearBindings();
+    if (l.getProvider() != null) {
+      stmt.bindString(1, l.getProvider());
     }
-    if (c.getInt(c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_ALTITUDE)) == 1) {
-      l.setAltitude(c.getDouble(c.getColumnIndex(LocationEntry.COLUMN_NAME_ALTITUDE)));
+    stmt.bindLong(2, l.getTime());
+    stmt.bindDouble(3, l.getAccuracy());
+    stmt.bindDouble(4, l.getSpeed());
+    stmt.bindDouble(5, l.getBearing());
+    stmt.bindDouble(6, l.getAltitude());
+    stmt.bindDouble(7, l.getRadius());
+    stmt.bindDouble(8, l.getLatitude());
+    stmt.bindDouble(9, l.getLongitude());
+    stmt.bindLong(10, l.hasAccuracy() ? 1 : 0);
+    stmt.bindLong(11, l.hasSpeed() ? 1 : 0);
+    stmt.bindLong(12, l.hasBearing() ? 1 : 0);
+    stmt.bindLong(13, l.hasAltitude() ? 1 : 0);
+    stmt.bindLong(14, l.hasRadius() ? 1 : 0);
+    if (l.getLocationProvider() != null) {
+      stmt.bindLong(15, l.getLocationProvider());
     }
-    if (c.getInt(c.getColumnIndex(LocationEntry.COLUMN_NAME_HAS_RADIUS)) == 1) {
-      l.setRadius(c.getFloat(c.getColumnIndex(LocationEntry.COLUMN_NAME_RADIUS)));
+    if (l.getBatchStartMillis() != null) {
+      stmt.bindLong(16, l.getBatchStartMillis());
     }
-    l.setLatitude(c.getDouble(c.getColumnIndex(LocationEntry.COLUMN_NAME_LATITUDE)));
-    l.setLongitude(c.getDouble(c.getColumnIndex(LocationEntry.COLUMN_NAME_LONGITUDE)));
-    l.setLocationProvider(c.getInt(c.getColumnIndex(LocationEntry.COLUMN_NAME_LOCATION_PROVIDER)));
-    l.setBatchStartMillis(c.getLong(c.getColumnIndex(LocationEntry.COLUMN_NAME_BATCH_START_MILLIS)));
-    l.setStatus(c.getInt(c.getColumnIndex(LocationEntry.COLUMN_NAME_STATUS)));
-    l.setLocationId(c.getLong(c.getColumnIndex(LocationEntry._ID)));
-    l.setMockFlags(c.getInt((c.getColumnIndex(LocationEntry.COLUMN_NAME_MOCK_FLAGS))));
-
-    return l;
-  }
-
-  private ContentValues getContentValues(BackgroundLocation l) {
-    ContentValues values = new ContentValues();
-    values.put(LocationEntry.COLUMN_NAME_PROVIDER, l.getProvider());
-    values.put(LocationEntry.COLUMN_NAME_TIME, l.getTime());
-    values.put(LocationEntry.COLUMN_NAME_ACCURACY, l.getAccuracy());
-    values.put(LocationEntry.COLUMN_NAME_SPEED, l.getSpeed());
-    values.put(LocationEntry.COLUMN_NAME_BEARING, l.getBearing());
-    values.put(LocationEntry.COLUMN_NAME_ALTITUDE, l.getAltitude());
-    values.put(LocationEntry.COLUMN_NAME_RADIUS, l.getRadius());
-    values.put(LocationEntry.COLUMN_NAME_LATITUDE, l.getLatitude());
-    values.put(LocationEntry.COLUMN_NAME_LONGITUDE, l.getLongitude());
-    values.put(LocationEntry.COLUMN_NAME_HAS_ACCURACY, l.hasAccuracy() ? 1 : 0);
-    values.put(LocationEntry.COLUMN_NAME_HAS_SPEED, l.hasSpeed() ? 1 : 0);
-    values.put(LocationEntry.COLUMN_NAME_HAS_BEARING, l.hasBearing() ? 1 : 0);
-    values.put(LocationEntry.COLUMN_NAME_HAS_ALTITUDE, l.hasAltitude() ? 1 : 0);
-    values.put(LocationEntry.COLUMN_NAME_HAS_RADIUS, l.hasRadius() ? 1 : 0);
-    values.put(LocationEntry.COLUMN_NAME_LOCATION_PROVIDER, l.getLocationProvider());
-    values.put(LocationEntry.COLUMN_NAME_STATUS, l.getStatus());
-    values.put(LocationEntry.COLUMN_NAME_BATCH_START_MILLIS, l.getBatchStartMillis());
-    values.put(LocationEntry.COLUMN_NAME_MOCK_FLAGS, l.getMockFlags());
-
-    return values;
+    stmt.bindLong(17, l.getStatus());
+    stmt.bindLong(18, l.getMockFlags());
   }
 
   private String[] queryColumns() {
@@ -0,0 +1,283 @@
+package com.marianhello.bgloc.data.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationSlotEntry;
+import com.marianhello.logging.LoggerManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed size ring of locations stored with maxRows limit
+ *
+ * Location is written into slot seq % maxRows, where seq is incremented with every write.
+ * When slot is already taken, location row it points to is overwritten in place,
+ * so location table does not grow above maxRows and no pages are freed on the write path.
+ *
+ * Locations pending for post or sync are protected. When the next slot holds one,
+ * the oldest slot with already handled (deleted or removed) location is reused instead.
+ * Only when every slot holds pending location, the next one is overwritten.
+ *
+ * When maxRows is lowered, ring is compacted once. Handled locations are deleted first,
+ * pending ones only when there are not enough handled ones, oldest first in both cases.
+ * Freed pages are reclaimed later, see {@link SQLiteOpenHelper#reclaimFreeSpace()}.
+ *
+ * Ring keeps compiled statements and its position in memory, so it must be the only writer
+ * of the slot table. LocationContentProvider owns the single instance.
+ * Writes are serialized by the write transaction they run in. Ring takes no lock of its own,
+ * which would deadlock with provider batches already holding the transaction.
+ */
+public class SQLiteLocationRing {
+    private static final String SQL_SELECT_NEXT_SEQ = new StringBuilder("SELECT ifnull(max(")
+            .append(LocationSlotEntry.COLUMN_NAME_SEQ).append(") + 1, 0)")
+            .append(" FROM ").append(LocationSlotEntry.TABLE_NAME)
+            .toString();
+
+    private static final String SQL_SELECT_SLOT_LOCATION_ID = new StringBuilder("SELECT ifnull((SELECT ")
+            .append(LocationSlotEntry.COLUMN_NAME_LOCATION_ID)
+            .append(" FROM ").append(LocationSlotEntry.TABLE_NAME)
+            .append(" WHERE ").append(LocationSlotEntry.COLUMN_NAME_SLOT).append(" = ?), -1)")
+            .toString();
+
+    private static final String SQL_SELECT_LOCATION_STATUS = new StringBuilder("SELECT ifnull((SELECT ")
+            .append(LocationEntry.COLUMN_NAME_STATUS)
+            .append(" FROM ").append(LocationEntry.TABLE_NAME)
+            .append(" WHERE ").append(LocationEntry._ID).append(" = ?), -1)")
+            .toString();
+
+    private static final String SQL_SELECT_OLDEST_HANDLED_SLOT = new StringBuilder("SELECT s.")
+            .append(LocationSlotEntry.COLUMN_NAME_SLOT).append(", s.")
+            .append(LocationSlotEntry.COLUMN_NAME_LOCATION_ID)
+            .append(" FROM ").append(LocationSlotEntry.TABLE_NAME).append(" s")
+            .append(" LEFT JOIN ").append(LocationEntry.TABLE_NAME).append(" l")
+            .append(" ON l.").append(LocationEntry._ID).append(" = s.").append(LocationSlotEntry.COLUMN_NAME_LOCATION_ID)
+            .append(" WHERE l.").append(LocationEntry._ID).append(" IS NULL")
+            .append(" OR l.").append(LocationEntry.COLUMN_NAME_STATUS).append(" = ?")
+            .append(" ORDER BY s.").append(LocationSlotEntry.COLUMN_NAME_SEQ)
+            .append(" LIMIT 1")
+            .toString();
+
+    private static final String SQL_UPSERT_SLOT = new StringBuilder("INSERT OR REPLACE INTO ")
+            .append(LocationSlotEntry.TABLE_NAME).append(" (")
+            .append(LocationSlotEntry.COLUMN_NAME_SLOT).append(",")
+            .append(LocationSlotEntry.COLUMN_NAME_SEQ).append(",")
+            .append(LocationSlotEntry.COLUMN_NAME_LOCATION_ID)
+            .append(") VALUES (?,?,?)")
+            .toString();
+
+    private static final String SQL_COUNT_SLOTS_BEYOND = new StringBuilder("SELECT count(*)")
+            .append(" FROM ").append(LocationSlotEntry.TABLE_NAME)
+            .append(" WHERE ").append(LocationSlotEntry.COLUMN_NAME_SLOT).append(" >= ?")
+            .toString();
+
+    private static final String SQL_SELECT_SLOTS_BY_SEQ = new StringBuilder("SELECT s.")
+            .append(LocationSlotEntry.COLUMN_NAME_LOCATION_ID).append(", ifnull(l.")
+            .append(LocationEntry.COLUMN_NAME_STATUS).append(", -1)")
+            .append(" FROM ").append(LocationSlotEntry.TABLE_NAME).append(" s")
+            .append(" LEFT JOIN ").append(LocationEntry.TABLE_NAME).append(" l")
+            .append(" ON l.").append(LocationEntry._ID).append(" = s.").append(LocationSlotEntry.COLUMN_NAME_LOCATION_ID)
+            .append(" ORDER BY s.").append(LocationSlotEntry.COLUMN_NAME_SEQ)
+            .toString();
+
+    private final SQLiteDatabase mDatabase;
+    private final SQLiteStatement mInsertStmt;
+    private final SQLiteStatement mOverwriteStmt;
+    private final SQLiteStatement mSelectSlotLocationIdStmt;
+    private final SQLiteStatement mSelectLocationStatusStmt;
+    private final SQLiteStatement mUpsertSlotStmt;
+
+    // capacity ring was last written with, 0 when position has to be loaded
+    private int mCapacity = 0;
+    private long mNextSeq = 0;
+
+    private org.slf4j.Logger logger;
+
+    public SQLiteLocationRing(SQLiteDatabase db) {
+        logger = LoggerManager.getLogger(SQLiteLocationRing.class);
+
+        mDatabase = db;
+        mInsertStmt = db.compileStatement(SQLiteLocationDAO.SQL_INSERT_LOCATION);
+        mOverwriteStmt = db.compileStatement(SQLiteLocationDAO.SQL_OVERWRITE_LOCATION);
+        mSelectSlotLocationIdStmt = db.compileStatement(SQL_SELECT_SLOT_LOCATION_ID);
+        mSelectLocationStatusStmt = db.compileStatement(SQL_SELECT_LOCATION_STATUS);
+        mUpsertSlotStmt = db.compileStatement(SQL_UPSERT_SLOT);
+    }
+
+    /**
+     * Write location into next slot of the ring
+     *
+     * @param values location values
+     * @param maxRows ring capacity
+     * @return id of written location row or -1 when maxRows is not positive
+     */
+    public long persist(ContentValues values, int maxRows) {
+        if (maxRows <= 0) {
+            return -1;
+        }
+
+        boolean isWritten = false;
+        mDatabase.beginTransactionNonExclusive();
+        try {
+            if (maxRows != mCapacity) {
+                mNextSeq = DatabaseUtils.longForQuery(mDatabase, SQL_SELECT_NEXT_SEQ, null);
+                String[] args = { String.valueOf(maxRows) };
+                if (DatabaseUtils.longForQuery(mDatabase, SQL_COUNT_SLOTS_BEYOND, args) > 0) {
+                    compact(maxRows);
+                }
+            }
+
+            long seq = mNextSeq;
+            long slot = seq % maxRows;
+            long locationId = getSlotLocationId(slot);
+            if (locationId >= 0 && isPending(locationId)) {
+                long[] handledSlot = getOldestHandledSlot();
+                if (handledSlot != null) {
+                    slot = handledSlot[0];
+                    locationId = handledSlot[1];
+                } else {
+                    logger.debug("All {} location slots are pending, overwriting slot: {}", maxRows, slot);
+                }
+            }
+
+            if (locationId < 0 || !overwrite(locationId, values)) {
+                locationId = insert(values);
+            }
+            upsertSlot(slot, seq, locationId);
+
+            mDatabase.setTransactionSuccessful();
+            isWritten = true;
+            mCapacity = maxRows;
+            mNextSeq = seq + 1;
+
+            return locationId;
+        } finally {
+            if (!isWritten) {
+                // transaction is rolled back, position is reloaded on next write
+                mCapacity = 0;
+            }
+            mDatabase.endTransaction();
+        }
+    }
+
+    /**
+     * Fit ring into lowered capacity
+     *
+     * Kept locations are moved into slots preceding ring position, so the oldest
+     * of them is overwritten first.
+     */
+    private void compact(int capacity) {
+        List<long[]> slots = new ArrayList<long[]>();
+        Cursor cursor = mDatabase.rawQuery(SQL_SELECT_SLOTS_BY_SEQ, null);
+        try {
+            while (cursor.moveToNext()) {
+                slots.add(new long[] { cursor.getLong(0), cursor.getLong(1) });
+            }
+        } finally {
+            cursor.close();
+        }
+
+        int dropCount = slots.size() - capacity;
+        boolean[] isDropped = new boolean[slots.size()];
+        // handled locations are dropped in first pass, pending ones in second
+        for (int pass = 0; pass < 2 && dropCount > 0; pass++) {
+            for (int i = 0; i < slots.size() && dropCount > 0; i++) {
+                if (!isDropped[i] && (pass == 1 || !isPendingStatus(slots.get(i)[1]))) {
+                    isDropped[i] = true;
+                    dropCount--;
+                }
+            }
+        }
+
+        List<Long> keptIds = new ArrayList<Long>(capacity);
+        for (int i = 0; i < slots.size(); i++) {
+            long locationId = slots.get(i)[0];
+            if (!isDropped[i]) {
+                keptIds.add(locationId);
+            } else if (slots.get(i)[1] >= 0) {
+                mDatabase.delete(LocationEntry.TABLE_NAME, LocationEntry._ID + " = ?",
+                        new String[] { String.valueOf(locationId) });
+            }
+        }
+
+        mDatabase.delete(LocationSlotEntry.TABLE_NAME, null, null);
+        long seq = mNextSeq - keptIds.size();
+        for (Long locationId : keptIds) {
+            upsertSlot(seq % capacity, seq, locationId);
+            seq++;
+        }
+        logger.debug("Location ring compacted to {} slots, dropped {} locations", capacity, slots.size() - keptIds.size());
+    }
+
+    private long getSlotLocationId(long slot) {
+        mSelectSlotLocationIdStmt.bindLong(1, slot);
+        return mSelectSlotLocationIdStmt.simpleQueryForLong();
+    }
+
+    private boolean isPending(long locationId) {
+        mSelectLocationStatusStmt.bindLong(1, locationId);
+        return isPendingStatus(mSelectLocationStatusStmt.simpleQueryForLong());
+    }
+
+    private static boolean isPendingStatus(long status) {
+        return status == BackgroundLocation.POST_PENDING || status == BackgroundLocation.SYNC_PENDING;
+    }
+
+    /**
+     * Returns slot and location id of least recently written slot with handled location
+     * or null when there is no such slot
+     *
+     * Scans the slots, but runs only when the next slot holds pending location.
+     */
+    private long[] getOldestHandledSlot() {
+        Cursor cursor = mDatabase.rawQuery(SQL_SELECT_OLDEST_HANDLED_SLOT, new String[] {
+                String.valueOf(BackgroundLocation.DELETED)
+        });
+        try {
+            if (cursor.moveToFirst()) {
+                return new long[] { cursor.getLong(0), cursor.getLong(1) };
+            }
+            return null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long insert(ContentValues values) {
+        bindValues(mInsertStmt, values);
+        return mInsertStmt.executeInsert();
+    }
+
+    private boolean overwrite(long locationId, ContentValues values) {
+        bindValues(mOverwriteStmt, values);
+        mOverwriteStmt.bindLong(SQLiteLocationDAO.INSERT_COLUMNS.length + 1, locationId);
+        return mOverwriteStmt.executeUpdateDelete() > 0;
+    }
+
+    private void upsertSlot(long slot, long seq, long locationId) {
+        mUpsertSlotStmt.bindLong(1, slot);
+        mUpsertSlotStmt.bindLong(2, seq);
+        mUpsertSlotStmt.bindLong(3, locationId);
+        mUpsertSlotStmt.executeInsert();
+    }
+
+    /**
+     * Bind values to statement in order of SQLiteLocationDAO.INSERT_COLUMNS,
+     * missing values are bound as null
+     */
+    private static void bindValues(SQLiteStatement stmt, ContentValues values) {
+        stmt.clearBindings();
+        for (int i = 0; i < SQLiteLocationDAO.INSERT_COLUMNS.length; i++) {
+            Object value = values.get(SQLiteLocationDAO.INSERT_COLUMNS[i]);
+            if (value != null) {
+                DatabaseUtils.bindObjectToProgram(stmt, i + 1, value);
+            }
+        }
+    }
+}
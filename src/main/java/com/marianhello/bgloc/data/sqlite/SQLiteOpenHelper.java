@@ -2,6 +2,8 @@ package com.marianhello.bgloc.data.sqlite;
 
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
@@ -15,20 +17,44 @@ import static com.marianhello.bgloc.data.sqlite.SQLiteConfigurationContract.Conf
 import static com.marianhello.bgloc.data.sqlite.SQLiteConfigurationContract.ConfigurationEntry.SQL_DROP_CONFIG_TABLE;
 import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry.SQL_CREATE_LOCATION_TABLE;
 import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry.SQL_CREATE_LOCATION_TABLE_BATCH_ID_IDX;
+import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry.SQL_CREATE_LOCATION_TABLE_STATUS_BATCH_ID_IDX;
+import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry.SQL_CREATE_LOCATION_TABLE_STATUS_TIME_IDX;
 import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry.SQL_CREATE_LOCATION_TABLE_TIME_IDX;
 import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry.SQL_DROP_LOCATION_TABLE;
+import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationSlotEntry.SQL_CREATE_LOCATION_SLOT_TABLE;
+import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationSlotEntry.SQL_CREATE_LOCATION_SLOT_TABLE_LOCATION_ID_IDX;
+import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationSlotEntry.SQL_DROP_LOCATION_SLOT_TABLE;
+import static com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationSlotEntry.SQL_FILL_LOCATION_SLOT_TABLE;
 
 public class SQLiteOpenHelper extends android.database.sqlite.SQLiteOpenHelper {
     private static final String TAG = SQLiteOpenHelper.class.getName();
     public static final String SQLITE_DATABASE_NAME = "cordova_bg_geolocation.db";
-    public static final int DATABASE_VERSION = 15;
+    public static final int DATABASE_VERSION = 24;
 
     public static final String TEXT_TYPE = " TEXT";
     public static final String INTEGER_TYPE = " INTEGER";
     public static final String REAL_TYPE = " REAL";
     public static final String COMMA_SEP = ",";
 
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
     private static SQLiteOpenHelper instance;
+    private static StorageProfile storageProfile = StorageProfile.DEFAULT;
+
+    /**
+     * Set connection settings used for every subsequently opened database
+     *
+     * Must be called before first database access to take effect.
+     *
+     * @param profile
+     */
+    public static synchronized void setStorageProfile(StorageProfile profile) {
+        storageProfile = profile;
+    }
+
+    public static synchronized StorageProfile getStorageProfile() {
+        return storageProfile;
+    }
 
     /**
      * Get SqliteOpenHelper instance (singleton)
@@ -59,6 +85,34 @@ public class SQLiteOpenHelper extends android.database.sqlite.SQLiteOpenHelper {
         super(context, SQLITE_DATABASE_NAME, null, DATABASE_VERSION);
     }
 
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        StorageProfile profile = getStorageProfile();
+        Log.d(TAG, "Configuring db: " + profile);
+
+        // page size and auto vacuum take effect only on newly created db,
+        // existing db is converted to incremental auto vacuum in reclaimFreeSpace
+        if (profile.getPageSize() > 0) {
+            execPragma(db, "page_size = " + profile.getPageSize());
+        }
+        execPragma(db, "auto_vacuum = INCREMENTAL");
+
+        if (profile.isWriteAheadLoggingEnabled()) {
+            // gives pool of read-only connections, so queries run concurrently with writes
+            db.enableWriteAheadLogging();
+        } else {
+            db.disableWriteAheadLogging();
+        }
+        execPragma(db, "synchronous = " + profile.getSynchronous());
+        if (profile.getCacheSizeKb() > 0) {
+            // negative value is size in KiB instead of pages
+            execPragma(db, "cache_size = -" + profile.getCacheSizeKb());
+        }
+        if (profile.getMmapSize() > 0) {
+            execPragma(db, "mmap_size = " + profile.getMmapSize());
+        }
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
         Log.d(TAG, "Creating db: " + this.getDatabaseName());
@@ -66,6 +120,10 @@ public class SQLiteOpenHelper extends android.database.sqlite.SQLiteOpenHelper {
         execAndLogSql(db, SQL_CREATE_CONFIG_TABLE);
         execAndLogSql(db, SQL_CREATE_LOCATION_TABLE_TIME_IDX);
         execAndLogSql(db, SQL_CREATE_LOCATION_TABLE_BATCH_ID_IDX);
+        execAndLogSql(db, SQL_CREATE_LOCATION_TABLE_STATUS_TIME_IDX);
+        execAndLogSql(db, SQL_CREATE_LOCATION_TABLE_STATUS_BATCH_ID_IDX);
+        execAndLogSql(db, SQL_CREATE_LOCATION_SLOT_TABLE);
+        execAndLogSql(db, SQL_CREATE_LOCATION_SLOT_TABLE_LOCATION_ID_IDX);
     }
 
     @Override
@@ -112,6 +170,38 @@ public class SQLiteOpenHelper extends android.database.sqlite.SQLiteOpenHelper {
             case 14:
                 alterSql.add("ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
                         " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_NOTIFICATIONS_ENABLED + INTEGER_TYPE);
+            case 15:
+                alterSql.add(SQL_CREATE_LOCATION_TABLE_STATUS_TIME_IDX);
+                alterSql.add(SQL_CREATE_LOCATION_TABLE_STATUS_BATCH_ID_IDX);
+            case 16:
+                alterSql.add("ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+                        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_SYNC_BATCH_SIZE + INTEGER_TYPE);
+            case 17:
+                alterSql.add("ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+                        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_HTTP_COMPRESSION + INTEGER_TYPE);
+            case 18:
+                alterSql.add("ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+                        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_POST_BATCH_SIZE + INTEGER_TYPE);
+                alterSql.add("ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+                        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_POST_BATCH_DELAY + INTEGER_TYPE);
+            case 19:
+                alterSql.add("ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+                        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_POST_BACKLOG_BUDGET + INTEGER_TYPE);
+            case 20:
+                alterSql.add("ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+                        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_PAYLOAD_FORMAT + TEXT_TYPE);
+            case 21:
+                alterSql.add("ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+                        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_LOCATION_FILTER_ENABLED + INTEGER_TYPE);
+            case 22:
+                alterSql.add("ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+                        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_SIMPLIFY_TOLERANCE + REAL_TYPE);
+                alterSql.add("ALTER TABLE " + ConfigurationEntry.TABLE_NAME +
+                        " ADD COLUMN " + ConfigurationEntry.COLUMN_NAME_SIMPLIFY_MAX_DELAY + INTEGER_TYPE);
+            case 23:
+                alterSql.add(SQL_CREATE_LOCATION_SLOT_TABLE);
+                alterSql.add(SQL_CREATE_LOCATION_SLOT_TABLE_LOCATION_ID_IDX);
+                alterSql.add(SQL_FILL_LOCATION_SLOT_TABLE);
 
                 break; // DO NOT FORGET TO MOVE DOWN BREAK ON DB UPGRADE!!!
             default:
@@ -129,9 +219,51 @@ public class SQLiteOpenHelper extends android.database.sqlite.SQLiteOpenHelper {
         // we don't support db downgrade yet, instead we drop table and start over
         execAndLogSql(db, SQL_DROP_LOCATION_TABLE);
         execAndLogSql(db, SQL_DROP_CONFIG_TABLE);
+        execAndLogSql(db, SQL_DROP_LOCATION_SLOT_TABLE);
         onCreate(db);
     }
 
+    /**
+     * Reclaim free pages left by deleted or trimmed locations
+     *
+     * Can take a while, so it runs from DatabaseMaintenanceJobService only while device is idle and charging.
+     * Database created before incremental auto vacuum was enabled is converted with one full VACUUM.
+     */
+    public void reclaimFreeSpace() {
+        SQLiteDatabase db = getWritableDatabase();
+        if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+            execAndLogSql(db, "PRAGMA auto_vacuum = INCREMENTAL");
+            execAndLogSql(db, "VACUUM");
+            return;
+        }
+
+        long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        if (freePages == 0) {
+            return;
+        }
+
+        Log.d(TAG, "Reclaiming free pages: " + freePages);
+        // incremental_vacuum frees one page per step
+        Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum", null);
+        try {
+            while (cursor.moveToNext());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Execute pragma, which may or may not return result row
+     */
+    private static void execPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
     public void execAndLogSql(SQLiteDatabase db, String sql) {
         Log.d(TAG, sql);
         try {
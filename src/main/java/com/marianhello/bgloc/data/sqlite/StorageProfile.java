@@ -0,0 +1,78 @@
+package com.marianhello.bgloc.data.sqlite;
+
+/**
+ * Connection settings applied by SQLiteOpenHelper when database is opened
+ *
+ * Page size takes effect only for newly created database.
+ * Cache and mmap size are per connection settings and apply to primary (write) connection.
+ */
+public class StorageProfile {
+    public static final String SYNCHRONOUS_OFF = "OFF";
+    public static final String SYNCHRONOUS_NORMAL = "NORMAL";
+    public static final String SYNCHRONOUS_FULL = "FULL";
+
+    /**
+     * Write-ahead logging with relaxed syncing, so readers do not block behind location writes
+     */
+    public static final StorageProfile DEFAULT = new StorageProfile(true, SYNCHRONOUS_NORMAL, 4096, 2048, 8 * 1024 * 1024);
+
+    /**
+     * Rollback journal with sqlite defaults as used by previous versions
+     */
+    public static final StorageProfile LEGACY = new StorageProfile(false, SYNCHRONOUS_FULL, 0, 0, 0);
+
+    private final boolean mWriteAheadLoggingEnabled;
+    private final String mSynchronous;
+    private final int mPageSize;
+    private final int mCacheSizeKb;
+    private final long mMmapSize;
+
+    /**
+     * Constructor
+     *
+     * @param writeAheadLoggingEnabled
+     * @param synchronous one of SYNCHRONOUS_OFF, SYNCHRONOUS_NORMAL, SYNCHRONOUS_FULL
+     * @param pageSize page size in bytes or 0 for sqlite default
+     * @param cacheSizeKb page cache size in KiB or 0 for sqlite default
+     * @param mmapSize memory mapped I/O size in bytes or 0 to disable
+     */
+    public StorageProfile(boolean writeAheadLoggingEnabled, String synchronous, int pageSize, int cacheSizeKb, long mmapSize) {
+        mWriteAheadLoggingEnabled = writeAheadLoggingEnabled;
+        mSynchronous = synchronous;
+        mPageSize = pageSize;
+        mCacheSizeKb = cacheSizeKb;
+        mMmapSize = mmapSize;
+    }
+
+    public boolean isWriteAheadLoggingEnabled() {
+        return mWriteAheadLoggingEnabled;
+    }
+
+    public String getSynchronous() {
+        return mSynchronous;
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    public int getCacheSizeKb() {
+        return mCacheSizeKb;
+    }
+
+    public long getMmapSize() {
+        return mMmapSize;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuffer()
+                .append("StorageProfile[wal=").append(mWriteAheadLoggingEnabled)
+                .append(" synchronous=").append(mSynchronous)
+                .append(" pageSize=").append(mPageSize)
+                .append(" cacheSizeKb=").append(mCacheSizeKb)
+                .append(" mmapSize=").append(mMmapSize)
+                .append("]")
+                .toString();
+    }
+}
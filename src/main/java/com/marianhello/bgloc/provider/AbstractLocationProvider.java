@@ -13,6 +13,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.database.ContentObserver;
 import android.location.Location;
 import android.media.AudioManager;
 import android.provider.Settings;
@@ -40,6 +41,10 @@ public abstract class AbstractLocationProvider implements LocationProvider {
     protected org.slf4j.Logger logger;
 
     private ProviderDelegate mDelegate;
+    private LocationFilter mLocationFilter;
+    private boolean mIsCustomLocationFilter = false;
+    private ContentObserver mMockLocationsObserver;
+    private volatile Boolean mMockLocationsEnabled;
 
     protected AbstractLocationProvider(Context context) {
         mContext = context;
@@ -50,17 +55,51 @@ public abstract class AbstractLocationProvider implements LocationProvider {
     @Override
     public void onCreate() {
         toneGenerator = new ToneGenerator(AudioManager.STREAM_NOTIFICATION, 100);
+
+        // setting almost never changes, so it is cached instead of querying settings provider on every location
+        mMockLocationsObserver = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                mMockLocationsEnabled = readMockLocationsEnabled();
+            }
+        };
+        mContext.getContentResolver().registerContentObserver(
+                Settings.Secure.getUriFor(Settings.Secure.ALLOW_MOCK_LOCATION), false, mMockLocationsObserver);
+        mMockLocationsEnabled = readMockLocationsEnabled();
     }
 
     @Override
     public void onDestroy() {
         toneGenerator.release();
         toneGenerator = null;
+
+        if (mMockLocationsObserver != null) {
+            mContext.getContentResolver().unregisterContentObserver(mMockLocationsObserver);
+            mMockLocationsObserver = null;
+        }
+        mMockLocationsEnabled = null;
     }
 
     @Override
     public void onConfigure(Config config) {
         mConfig = config;
+        configureLocationFilter();
+    }
+
+    /**
+     * Child classes must call super.onStart() before registering for location updates
+     */
+    @Override
+    public void onStart() {
+        resetLocationFilter();
+    }
+
+    /**
+     * Child classes must call super.onStop() after location updates were removed
+     */
+    @Override
+    public void onStop() {
+        resetLocationFilter();
     }
 
     @Override
@@ -72,6 +111,39 @@ public abstract class AbstractLocationProvider implements LocationProvider {
         mDelegate = delegate;
     }
 
+    /**
+     * Set filter of recorded locations
+     *
+     * Custom filter replaces one enabled by option locationFilterEnabled
+     * and is kept across configuration changes. Filter receives every recorded
+     * location before it is passed to delegate and is reset when provider starts
+     * and stops.
+     * @param filter filter or null to restore default behaviour
+     */
+    public void setLocationFilter(LocationFilter filter) {
+        mLocationFilter = filter;
+        mIsCustomLocationFilter = filter != null;
+        configureLocationFilter();
+    }
+
+    private void configureLocationFilter() {
+        if (mIsCustomLocationFilter || mConfig == null) {
+            return;
+        }
+        boolean isFilterEnabled = mConfig.hasLocationFilterEnabled() && mConfig.getLocationFilterEnabled();
+        if (!isFilterEnabled) {
+            mLocationFilter = null;
+        } else if (mLocationFilter == null) {
+            mLocationFilter = new KalmanLocationFilter();
+        }
+    }
+
+    private void resetLocationFilter() {
+        if (mLocationFilter != null) {
+            mLocationFilter.reset();
+        }
+    }
+
     /**
      * Register broadcast reciever
      * @param receiver
@@ -97,6 +169,13 @@ public abstract class AbstractLocationProvider implements LocationProvider {
         if (mDelegate != null) {
             BackgroundLocation bgLocation = new BackgroundLocation(PROVIDER_ID, location);
             bgLocation.setMockLocationsEnabled(hasMockLocationsEnabled());
+            if (mLocationFilter != null) {
+                bgLocation = mLocationFilter.filter(bgLocation);
+                if (bgLocation == null) {
+                    logger.debug("Location dropped by filter");
+                    return;
+                }
+            }
             mDelegate.onLocation(bgLocation);
         }
     }
@@ -155,7 +234,16 @@ public abstract class AbstractLocationProvider implements LocationProvider {
     }
 
     public Boolean hasMockLocationsEnabled() {
-        return Settings.Secure.getString(mContext.getContentResolver(), android.provider.Settings.Secure.ALLOW_MOCK_LOCATION).equals("1");
+        Boolean mockLocationsEnabled = mMockLocationsEnabled;
+        if (mockLocationsEnabled == null) {
+            // not created yet
+            return readMockLocationsEnabled();
+        }
+        return mockLocationsEnabled;
+    }
+
+    private Boolean readMockLocationsEnabled() {
+        return "1".equals(Settings.Secure.getString(mContext.getContentResolver(), Settings.Secure.ALLOW_MOCK_LOCATION));
     }
 
     /**
@@ -56,6 +56,7 @@ public class ActivityRecognitionLocationProvider extends AbstractLocationProvide
     @Override
     public void onStart() {
         logger.info("Start recording");
+        super.onStart();
         this.isStarted = true;
         attachRecorder();
     }
@@ -66,6 +67,7 @@ public class ActivityRecognitionLocationProvider extends AbstractLocationProvide
         this.isStarted = false;
         detachRecorder();
         stopTracking();
+        super.onStop();
     }
 
     @Override
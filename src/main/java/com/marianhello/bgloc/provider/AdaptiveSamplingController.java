@@ -0,0 +1,157 @@
+package com.marianhello.bgloc.provider;
+
+/**
+ * Speed adaptive sampling controller
+ *
+ * Derives location request distance filter and interval from exponentially smoothed speed.
+ * Distance filter grows with square of speed (distanceFilter + speed^2, capped),
+ * interval is half of time needed to travel distance filter at current speed, so distance
+ * filter remains governing constraint, while location hardware can idle in between.
+ * Below MIN_SPEED, option.interval is used as is.
+ *
+ * To avoid re-registration churn, new settings are applied only when distance filter
+ * or interval changed by more than HYSTERESIS_RATIO relative to applied one and at least
+ * MIN_HOLD_MILLIS passed since last change. Decisions are counted and exposed as metrics.
+ *
+ * Time is passed in by caller as monotonic milliseconds (eg. SystemClock.elapsedRealtime).
+ */
+public class AdaptiveSamplingController {
+    public static final int MAX_DISTANCE_FILTER = 1000;
+    public static final long MAX_INTERVAL_MILLIS = 60 * 1000;
+    public static final float HYSTERESIS_RATIO = 0.25f;
+    public static final long MIN_HOLD_MILLIS = 30 * 1000;
+    public static final long SPEED_TIME_CONSTANT_MILLIS = 10 * 1000;
+    public static final float MIN_SPEED = 1;
+
+    private final int mBaseDistanceFilter;
+    private final long mBaseInterval;
+
+    private double mSmoothedSpeed;
+    private long mLastSampleAt;
+    private boolean mHasSpeed = false;
+
+    private int mDistanceFilter;
+    private long mInterval;
+    private long mAppliedAt;
+
+    private long mSampleCount = 0;
+    private long mReconfigurationCount = 0;
+    private long mSuppressedCount = 0;
+
+    /**
+     * @param baseDistanceFilter distance filter at zero speed (option.distanceFilter)
+     * @param baseInterval minimum interval between locations (option.interval)
+     */
+    public AdaptiveSamplingController(int baseDistanceFilter, long baseInterval) {
+        mBaseDistanceFilter = Math.max(0, baseDistanceFilter);
+        mBaseInterval = Math.max(0, baseInterval);
+        mDistanceFilter = mBaseDistanceFilter;
+        mInterval = mBaseInterval;
+    }
+
+    /**
+     * Forget speed estimate and seed it with given speed
+     *
+     * Settings are applied immediately, as provider is going to re-register anyway
+     * (eg. after speed acquisition).
+     * @param speed speed in m/s
+     * @param now current time in millis
+     */
+    public synchronized void reset(float speed, long now) {
+        mSmoothedSpeed = Math.max(0, speed);
+        mLastSampleAt = now;
+        mHasSpeed = true;
+        apply(now);
+    }
+
+    /**
+     * Feed speed sample
+     *
+     * @param speed speed in m/s
+     * @param now current time in millis
+     * @return true if settings changed and location updates should be re-registered
+     */
+    public synchronized boolean onSpeed(float speed, long now) {
+        mSampleCount++;
+        if (!mHasSpeed) {
+            reset(speed, now);
+            mReconfigurationCount++;
+            return true;
+        }
+
+        long dt = Math.max(0, now - mLastSampleAt);
+        double alpha = 1 - Math.exp(-(double) dt / SPEED_TIME_CONSTANT_MILLIS);
+        mSmoothedSpeed += alpha * (Math.max(0, speed) - mSmoothedSpeed);
+        mLastSampleAt = now;
+
+        int distanceFilter = targetDistanceFilter(mSmoothedSpeed);
+        long interval = targetInterval(distanceFilter, mSmoothedSpeed);
+        if (distanceFilter == mDistanceFilter && interval == mInterval) {
+            return false;
+        }
+
+        float change = Math.max(
+                Math.abs(distanceFilter - mDistanceFilter) / (float) Math.max(1, mDistanceFilter),
+                Math.abs(interval - mInterval) / (float) Math.max(1000, mInterval));
+        if (change <= HYSTERESIS_RATIO || now - mAppliedAt < MIN_HOLD_MILLIS) {
+            mSuppressedCount++;
+            return false;
+        }
+
+        apply(now);
+        mReconfigurationCount++;
+        return true;
+    }
+
+    public synchronized int getDistanceFilter() {
+        return mDistanceFilter;
+    }
+
+    public synchronized long getInterval() {
+        return mInterval;
+    }
+
+    public synchronized float getSmoothedSpeed() {
+        return (float) mSmoothedSpeed;
+    }
+
+    /**
+     * Returns number of speed samples processed
+     */
+    public synchronized long getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * Returns number of changes, which required re-registration
+     */
+    public synchronized long getReconfigurationCount() {
+        return mReconfigurationCount;
+    }
+
+    /**
+     * Returns number of changes, which were suppressed by hysteresis
+     */
+    public synchronized long getSuppressedCount() {
+        return mSuppressedCount;
+    }
+
+    private void apply(long now) {
+        mDistanceFilter = targetDistanceFilter(mSmoothedSpeed);
+        mInterval = targetInterval(mDistanceFilter, mSmoothedSpeed);
+        mAppliedAt = now;
+    }
+
+    private int targetDistanceFilter(double speed) {
+        double distanceFilter = mBaseDistanceFilter + speed * speed;
+        return (int) Math.min(MAX_DISTANCE_FILTER, Math.max(mBaseDistanceFilter, distanceFilter));
+    }
+
+    private long targetInterval(int distanceFilter, double speed) {
+        if (speed < MIN_SPEED) {
+            return mBaseInterval;
+        }
+        long interval = (long) Math.min(MAX_INTERVAL_MILLIS, distanceFilter / speed * 500);
+        return Math.max(mBaseInterval, interval);
+    }
+}
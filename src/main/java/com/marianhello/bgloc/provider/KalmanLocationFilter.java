@@ -0,0 +1,221 @@
+package com.marianhello.bgloc.provider;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+/**
+ * Constant velocity Kalman filter with outlier rejection
+ *
+ * Position is tracked in meters on local plane (equirectangular projection around first location).
+ * Both axes are independent and have same covariance, so single covariance matrix is kept.
+ * Measurement noise is taken from location accuracy, process noise is acceleration variance.
+ *
+ * Location is dropped when:
+ * - it is not newer than last accepted location (duplicate)
+ * - its accuracy is worse than maxAccuracy
+ * - reaching it from last accepted location requires speed above maxSpeed
+ *   (accuracy of both locations is subtracted from distance)
+ * - filtered position moved less than its own standard deviation since last delivered location (jitter)
+ *
+ * Delivered locations have filtered latitude and longitude, other properties are unchanged.
+ * Filter restarts from scratch after gap longer than resetInterval or after maxRejects
+ * consecutive outliers (eg. when first location was wrong).
+ */
+public class KalmanLocationFilter implements LocationFilter {
+    public static final double DEFAULT_ACCELERATION = 3; // m/s^2
+    public static final float DEFAULT_MAX_ACCURACY = 200; // m
+    public static final float DEFAULT_MAX_SPEED = 100; // m/s
+    public static final long DEFAULT_RESET_INTERVAL_MILLIS = 5 * 60 * 1000;
+    public static final int DEFAULT_MAX_REJECTS = 3;
+
+    private static final double EARTH_RADIUS = 6371009; // m
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+
+    private final double mAccelerationVariance;
+    private final float mMaxAccuracy;
+    private final float mMaxSpeed;
+    private final long mResetIntervalMillis;
+    private final int mMaxRejects;
+
+    private boolean mIsInitialized = false;
+    private int mRejects = 0;
+
+    // projection
+    private double mLatitude0;
+    private double mLongitude0;
+    private double mMetersPerDegreeLongitude;
+
+    // state: position (m) and velocity (m/s) per axis
+    private double mX, mVx, mY, mVy;
+    // covariance [[p00, p01], [p01, p11]] shared by both axes
+    private double mP00, mP01, mP11;
+
+    private long mLastTimeMillis;
+    private float mLastAccuracy;
+    private double mLastMeasuredX, mLastMeasuredY;
+    private double mDeliveredX, mDeliveredY;
+
+    public KalmanLocationFilter() {
+        this(DEFAULT_ACCELERATION, DEFAULT_MAX_ACCURACY, DEFAULT_MAX_SPEED, DEFAULT_RESET_INTERVAL_MILLIS, DEFAULT_MAX_REJECTS);
+    }
+
+    public KalmanLocationFilter(double acceleration, float maxAccuracy, float maxSpeed, long resetIntervalMillis, int maxRejects) {
+        mAccelerationVariance = acceleration * acceleration;
+        mMaxAccuracy = maxAccuracy;
+        mMaxSpeed = maxSpeed;
+        mResetIntervalMillis = resetIntervalMillis;
+        mMaxRejects = maxRejects;
+    }
+
+    @Override
+    public void reset() {
+        mIsInitialized = false;
+        mRejects = 0;
+    }
+
+    @Override
+    public BackgroundLocation filter(BackgroundLocation location) {
+        if (!location.hasAccuracy()) {
+            // nothing to weight measurement with
+            return location;
+        }
+        if (location.getAccuracy() > mMaxAccuracy) {
+            return null;
+        }
+
+        long timeMillis = getTimeMillis(location);
+        if (!mIsInitialized || timeMillis - mLastTimeMillis > mResetIntervalMillis) {
+            init(location, timeMillis);
+            return location;
+        }
+        if (timeMillis <= mLastTimeMillis) {
+            return null;
+        }
+
+        double dt = (timeMillis - mLastTimeMillis) / 1000d;
+        double zx = toX(location.getLongitude());
+        double zy = toY(location.getLatitude());
+        double r = location.getAccuracy();
+
+        // speed gate against last accepted measurement
+        double dx = zx - mLastMeasuredX;
+        double dy = zy - mLastMeasuredY;
+        double distance = Math.sqrt(dx * dx + dy * dy) - r - mLastAccuracy;
+        if (distance > mMaxSpeed * dt) {
+            if (++mRejects >= mMaxRejects) {
+                // outliers were consistent, previous locations were most likely wrong
+                init(location, timeMillis);
+                return location;
+            }
+            return null;
+        }
+        mRejects = 0;
+
+        predict(dt);
+        update(zx, zy, r * r);
+        mLastTimeMillis = timeMillis;
+        mLastAccuracy = location.getAccuracy();
+        mLastMeasuredX = zx;
+        mLastMeasuredY = zy;
+
+        // jitter gate, movement is not distinguishable from noise
+        double mx = mX - mDeliveredX;
+        double my = mY - mDeliveredY;
+        if (mx * mx + my * my < mP00) {
+            return null;
+        }
+
+        mDeliveredX = mX;
+        mDeliveredY = mY;
+        location.setLatitude(toLatitude(mY));
+        location.setLongitude(toLongitude(mX));
+        return location;
+    }
+
+    private void init(BackgroundLocation location, long timeMillis) {
+        mLatitude0 = location.getLatitude();
+        mLongitude0 = location.getLongitude();
+        mMetersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(mLatitude0));
+        mX = 0;
+        mY = 0;
+        mVx = 0;
+        mVy = 0;
+
+        double r = location.getAccuracy();
+        mP00 = r * r;
+        mP01 = 0;
+        // velocity is unknown, allow for speed of mMaxSpeed
+        mP11 = mMaxSpeed * mMaxSpeed;
+
+        mLastTimeMillis = timeMillis;
+        mLastAccuracy = location.getAccuracy();
+        mLastMeasuredX = mX;
+        mLastMeasuredY = mY;
+        mDeliveredX = mX;
+        mDeliveredY = mY;
+        mRejects = 0;
+        mIsInitialized = true;
+    }
+
+    private void predict(double dt) {
+        mX += mVx * dt;
+        mY += mVy * dt;
+
+        double dt2 = dt * dt;
+        double q = mAccelerationVariance;
+        mP00 += dt * (2 * mP01 + dt * mP11) + q * dt2 * dt2 / 4;
+        mP01 += dt * mP11 + q * dt2 * dt / 2;
+        mP11 += q * dt2;
+    }
+
+    private void update(double zx, double zy, double r) {
+        double s = mP00 + r;
+        double k0 = mP00 / s;
+        double k1 = mP01 / s;
+
+        double yx = zx - mX;
+        double yy = zy - mY;
+        mX += k0 * yx;
+        mVx += k1 * yx;
+        mY += k0 * yy;
+        mVy += k1 * yy;
+
+        double p00 = mP00;
+        double p01 = mP01;
+        mP00 = (1 - k0) * p00;
+        mP01 = (1 - k0) * p01;
+        mP11 -= k1 * p01;
+    }
+
+    private double toX(double longitude) {
+        return wrapLongitude(longitude - mLongitude0) * mMetersPerDegreeLongitude;
+    }
+
+    private double toY(double latitude) {
+        return (latitude - mLatitude0) * METERS_PER_DEGREE;
+    }
+
+    private double toLongitude(double x) {
+        return wrapLongitude(mLongitude0 + x / mMetersPerDegreeLongitude);
+    }
+
+    private double toLatitude(double y) {
+        return mLatitude0 + y / METERS_PER_DEGREE;
+    }
+
+    // keeps longitude in [-180, 180), so crossing antimeridian is not a jump
+    private static double wrapLongitude(double longitude) {
+        if (longitude >= 180) {
+            return longitude - 360;
+        }
+        if (longitude < -180) {
+            return longitude + 360;
+        }
+        return longitude;
+    }
+
+    private static long getTimeMillis(BackgroundLocation location) {
+        long elapsedRealtimeNanos = location.getElapsedRealtimeNanos();
+        // monotonic time is not affected by wall clock changes
+        return elapsedRealtimeNanos > 0 ? elapsedRealtimeNanos / 1000000 : location.getTime();
+    }
+}
@@ -0,0 +1,85 @@
+package com.marianhello.bgloc.provider;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+/**
+ * Arbitrates candidate locations from multiple providers during location acquisition
+ *
+ * Best candidate is selected by BackgroundLocation.isBetterLocation, so cheap but inaccurate
+ * fixes (eg. network) do not displace accurate ones (eg. gps). Callbacks are grouped into
+ * time windows of windowMillis. Completed windows, rather than raw callbacks, count
+ * as acquisition attempts, so burst of cheap fixes counts as single attempt.
+ *
+ * Acquisition can end as soon as best candidate meets accuracy target,
+ * which allows caller to stop expensive providers early.
+ *
+ * Time is passed in by caller as monotonic milliseconds (eg. SystemClock.elapsedRealtime).
+ */
+public class LocationArbiter {
+    private final float mAccuracyTarget;
+    private final long mWindowMillis;
+
+    private BackgroundLocation mBest;
+    private long mWindowStart;
+    private int mWindowCount = 0;
+    private int mCandidateCount = 0;
+
+    /**
+     * @param accuracyTarget accuracy in meters, which is considered good enough
+     * @param windowMillis duration of single acquisition attempt
+     */
+    public LocationArbiter(float accuracyTarget, long windowMillis) {
+        mAccuracyTarget = accuracyTarget;
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Offer candidate location
+     *
+     * @param location candidate
+     * @param now current time in millis
+     * @return true if candidate became best location
+     */
+    public synchronized boolean offer(BackgroundLocation location, long now) {
+        if (mCandidateCount++ == 0) {
+            mWindowStart = now;
+        } else if (now - mWindowStart >= mWindowMillis) {
+            mWindowCount++;
+            mWindowStart = now;
+        }
+
+        if (BackgroundLocation.isBetterLocation(location, mBest)) {
+            mBest = location;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns best candidate or null if none was offered yet
+     */
+    public synchronized BackgroundLocation getBest() {
+        return mBest;
+    }
+
+    /**
+     * Returns true if best candidate is at least as accurate as accuracy target
+     */
+    public synchronized boolean isAccuracyTargetMet() {
+        return mBest != null && mBest.hasAccuracy() && mBest.getAccuracy() <= mAccuracyTarget;
+    }
+
+    /**
+     * Returns number of completed time windows (acquisition attempts)
+     */
+    public synchronized int getWindowCount() {
+        return mWindowCount;
+    }
+
+    /**
+     * Returns number of offered candidates
+     */
+    public synchronized int getCandidateCount() {
+        return mCandidateCount;
+    }
+}
@@ -0,0 +1,23 @@
+package com.marianhello.bgloc.provider;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+/**
+ * Filtering stage between location provider and ProviderDelegate
+ *
+ * Filter is called from thread delivering locations of provider and does not need to be thread safe.
+ */
+public interface LocationFilter {
+    /**
+     * Filter location
+     *
+     * @param location location recorded by provider
+     * @return location to be delivered (can be modified) or null to drop location
+     */
+    BackgroundLocation filter(BackgroundLocation location);
+
+    /**
+     * Forget state, eg. when provider is restarted
+     */
+    void reset();
+}
@@ -36,6 +36,7 @@ public class RawLocationProvider extends AbstractLocationProvider implements Loc
             return;
         }
 
+        super.onStart();
         Criteria criteria = new Criteria();
         criteria.setAltitudeRequired(false);
         criteria.setBearingRequired(false);
@@ -67,6 +68,7 @@ public class RawLocationProvider extends AbstractLocationProvider implements Loc
         } finally {
             isStarted = false;
         }
+        super.onStop();
     }
 
     @Override
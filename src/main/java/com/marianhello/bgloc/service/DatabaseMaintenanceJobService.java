@@ -0,0 +1,90 @@
+package com.marianhello.bgloc.service;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.database.SQLException;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+
+import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
+import com.marianhello.logging.LoggerManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deferred database maintenance
+ *
+ * Reclaims free pages left by trimmed and released locations. Reclaiming can be full
+ * VACUUM on databases created before incremental auto vacuum was enabled, so job runs
+ * only while device is idle and charging, at most once a day.
+ */
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+public class DatabaseMaintenanceJobService extends JobService {
+    public static final int JOB_ID = 0x62676c6f;
+    private static final long INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private org.slf4j.Logger logger;
+
+    /**
+     * Schedule periodic maintenance, unless it is scheduled already
+     *
+     * @param context
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, DatabaseMaintenanceJobService.class))
+                .setRequiresCharging(true)
+                .setRequiresDeviceIdle(true)
+                .setPeriodic(INTERVAL_MILLIS)
+                .setPersisted(true)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        logger = LoggerManager.getLogger(DatabaseMaintenanceJobService.class);
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        logger.debug("Reclaiming database free space");
+        final Context context = getApplicationContext();
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SQLiteOpenHelper.getHelper(context).reclaimFreeSpace();
+                } catch (SQLException e) {
+                    logger.error("Error reclaiming database free space: {}", e.getMessage());
+                } finally {
+                    jobFinished(params, false);
+                }
+            }
+        }, "bgloc-db-maintenance");
+        worker.start();
+
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // vacuum cannot be interrupted, it is atomic and job runs again next period
+        logger.debug("Database maintenance stopped, device is no longer idle or charging");
+        return false;
+    }
+}
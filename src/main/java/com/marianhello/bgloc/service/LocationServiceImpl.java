@@ -62,6 +62,8 @@ import com.marianhello.logging.UncaughtExceptionLogger;
 import org.chromium.content.browser.ThreadUtils;
 import org.json.JSONException;
 
+import java.io.File;
+
 import static com.marianhello.bgloc.service.LocationServiceIntentBuilder.containsCommand;
 import static com.marianhello.bgloc.service.LocationServiceIntentBuilder.containsMessage;
 import static com.marianhello.bgloc.service.LocationServiceIntentBuilder.getCommand;
@@ -106,6 +108,9 @@ public class LocationServiceImpl extends Service implements ProviderDelegate, Lo
     /** notification id */
     private static int NOTIFICATION_ID = 1;
 
+    /** file in app files dir, where not yet persisted locations are journaled */
+    private static final String JOURNAL_FILENAME = "bgloc-location.journal";
+
     private ResourceResolver mResolver;
     private Config mConfig;
     private LocationProvider mProvider;
@@ -198,7 +203,7 @@ public class LocationServiceImpl extends Service implements ProviderDelegate, Lo
 
         mLocationDAO = DAOFactory.createLocationDAO(this);
 
-        mPostLocationTask = new PostLocationTask(mLocationDAO,
+        mPostLocationTask = new PostLocationTask(mLocationDAO, new File(getFilesDir(), JOURNAL_FILENAME),
                 new PostLocationTask.PostLocationTaskListener() {
                     @Override
                     public void onRequestedAbortUpdates() {
@@ -221,6 +226,11 @@ public class LocationServiceImpl extends Service implements ProviderDelegate, Lo
             }
         });
 
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            // older platforms leave free pages for reuse by sqlite
+            DatabaseMaintenanceJobService.schedule(this);
+        }
+
         registerReceiver(connectivityChangeReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
         NotificationHelper.registerServiceChannel(this);
     }
@@ -7,14 +7,16 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
-import android.text.TextUtils;
-import android.util.JsonWriter;
 
 import com.marianhello.bgloc.ResourceResolver;
 import com.marianhello.bgloc.data.AbstractLocationTemplate;
 import com.marianhello.bgloc.data.ArrayListLocationTemplate;
 import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.CompiledLocationTemplate;
 import com.marianhello.bgloc.data.HashMapLocationTemplate;
+import com.marianhello.bgloc.data.LocationCursorReader;
+import com.marianhello.bgloc.data.LocationEncoder;
+import com.marianhello.bgloc.data.LocationEncoderFactory;
 import com.marianhello.bgloc.data.LocationTemplate;
 import com.marianhello.bgloc.data.LocationTemplateFactory;
 import com.marianhello.bgloc.data.provider.LocationContentProvider;
@@ -24,22 +26,56 @@ import com.marianhello.bgloc.data.sqlite.SQLiteOpenHelper;
 import com.marianhello.logging.LoggerManager;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Created by finch on 20/07/16.
  */
 public class BatchManager {
+    /**
+     * Number of rows read from content provider at once
+     */
+    private static final int PAGE_SIZE = 500;
+
+    /**
+     * Deflater input buffer size of compressed batch file
+     */
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    /**
+     * Columns required to resolve template key
+     */
+    private static final Map<String, String[]> TEMPLATE_KEY_COLUMNS = new HashMap<String, String[]>();
+    static {
+        TEMPLATE_KEY_COLUMNS.put("@id", new String[] { LocationEntry._ID });
+        TEMPLATE_KEY_COLUMNS.put("@provider", new String[] { LocationEntry.COLUMN_NAME_PROVIDER });
+        TEMPLATE_KEY_COLUMNS.put("@locationProvider", new String[] { LocationEntry.COLUMN_NAME_LOCATION_PROVIDER });
+        TEMPLATE_KEY_COLUMNS.put("@time", new String[] { LocationEntry.COLUMN_NAME_TIME });
+        TEMPLATE_KEY_COLUMNS.put("@latitude", new String[] { LocationEntry.COLUMN_NAME_LATITUDE });
+        TEMPLATE_KEY_COLUMNS.put("@longitude", new String[] { LocationEntry.COLUMN_NAME_LONGITUDE });
+        TEMPLATE_KEY_COLUMNS.put("@accuracy", new String[] { LocationEntry.COLUMN_NAME_ACCURACY, LocationEntry.COLUMN_NAME_HAS_ACCURACY });
+        TEMPLATE_KEY_COLUMNS.put("@speed", new String[] { LocationEntry.COLUMN_NAME_SPEED, LocationEntry.COLUMN_NAME_HAS_SPEED });
+        TEMPLATE_KEY_COLUMNS.put("@altitude", new String[] { LocationEntry.COLUMN_NAME_ALTITUDE, LocationEntry.COLUMN_NAME_HAS_ALTITUDE });
+        TEMPLATE_KEY_COLUMNS.put("@bearing", new String[] { LocationEntry.COLUMN_NAME_BEARING, LocationEntry.COLUMN_NAME_HAS_BEARING });
+        TEMPLATE_KEY_COLUMNS.put("@radius", new String[] { LocationEntry.COLUMN_NAME_RADIUS, LocationEntry.COLUMN_NAME_HAS_RADIUS });
+        TEMPLATE_KEY_COLUMNS.put("@isFromMockProvider", new String[] { LocationEntry.COLUMN_NAME_MOCK_FLAGS });
+        TEMPLATE_KEY_COLUMNS.put("@mockLocationsEnabled", new String[] { LocationEntry.COLUMN_NAME_MOCK_FLAGS });
+    }
+
     private Context context;
     private org.slf4j.Logger logger;
 
@@ -48,85 +84,214 @@ public class BatchManager {
         this.context = context;
     }
 
-    private Uri getLocationContentUri() {
+    private String getAuthority() {
         ResourceResolver resourceResolver = ResourceResolver.newInstance(context);
-        String authority = resourceResolver.getAuthority();
-        return LocationContentProvider.getContentUri(authority);
+        return resourceResolver.getAuthority();
+    }
+
+    private Uri getLocationContentUri() {
+        return LocationContentProvider.getContentUri(getAuthority());
+    }
+
+    /**
+     * Returns projection with only columns referenced by template
+     */
+    private static String[] getProjection(LocationTemplate template) {
+        Set<String> columns = new LinkedHashSet<String>();
+        columns.add(LocationEntry._ID);
+
+        List<Object> values = new ArrayList<Object>();
+        if (template instanceof HashMapLocationTemplate) {
+            values.addAll(((HashMapLocationTemplate) template).toMap().values());
+        } else if (template instanceof ArrayListLocationTemplate) {
+            values.addAll(((ArrayListLocationTemplate) template).toList());
+        }
+
+        while (!values.isEmpty()) {
+            Object value = values.remove(values.size() - 1);
+            if (value instanceof Map) {
+                values.addAll(((Map<?, ?>) value).values());
+            } else if (value instanceof List) {
+                values.addAll((List<?>) value);
+            } else if (value instanceof String) {
+                String[] keyColumns = TEMPLATE_KEY_COLUMNS.get(value);
+                if (keyColumns != null) {
+                    columns.addAll(Arrays.asList(keyColumns));
+                }
+            }
+        }
+
+        return columns.toArray(new String[columns.size()]);
+    }
+
+    private long getLocationsCount(String whereClause, String[] whereArgs) {
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(
+                    getLocationContentUri(),
+                    new String[] { "count(*)" },
+                    whereClause,
+                    whereArgs,
+                    null
+            );
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
     }
 
-    private File createBatchFromTemplate(Long batchStartMillis, Integer syncThreshold, LocationTemplate template) throws IOException {
+    private File createBatchFromTemplate(Long batchStartMillis, Integer syncThreshold, LocationTemplate template, int maxBatchSize, boolean isCompressed, LocationEncoder encoder) throws IOException {
         logger.info("Creating batch {}", batchStartMillis);
 
         ContentResolver resolver = context.getContentResolver();
         Uri contentUri = getLocationContentUri();
+        String authority = getAuthority();
 
-        String whereClause = TextUtils.join("", new String[]{
-                LocationEntry.COLUMN_NAME_STATUS + " = ? AND ( ",
-                LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + " IS NULL OR ",
-                LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + " < ? )",
-        });
+        String whereClause = LocationEntry.SQL_WHERE_STATUS_BEFORE_BATCH;
         String[] whereArgs = {
                 String.valueOf(BackgroundLocation.SYNC_PENDING),
                 String.valueOf(batchStartMillis)
         };
 
-        Cursor cursor = null;
-        LocationWriter writer = null;
+        long pendingCount = getLocationsCount(whereClause, whereArgs);
+        if (pendingCount == 0 || pendingCount < syncThreshold) {
+            return null;
+        }
+        long batchSize = maxBatchSize > 0 ? Math.min(pendingCount, maxBatchSize) : pendingCount;
 
-        try {
-            cursor = resolver.query(
-                    contentUri,
-                    null,
-                    whereClause,
-                    whereArgs,
-                    LocationEntry.COLUMN_NAME_TIME + " ASC"
+        // keyset pagination, rows are read in pages of _id > lastId
+        String pageWhereClause = whereClause + " AND " + LocationEntry._ID + " > ?";
+        String[] projection = getProjection(template);
+        long lastId = 0;
+        long written = 0;
 
-            );
+        Cursor cursor = null;
+        File file = null;
+        OutputStream fs = null;
+        LocationEncoder.Writer writer = null;
+        boolean isCreated = false;
+        BackgroundLocation flyweight = new BackgroundLocation();
 
-            if (cursor.getCount() < syncThreshold) {
-                return null;
+        try {
+            String suffix = encoder.getFileExtension() + (isCompressed ? ".gz" : "");
+            file = File.createTempFile("locations", suffix);
+            fs = new FileOutputStream(file);
+            if (isCompressed) {
+                // compressed on the fly, so file length is exact length of request body
+                fs = new GZIPOutputStream(fs, GZIP_BUFFER_SIZE);
             }
-
-            File file = File.createTempFile("locations", ".json");
-            FileOutputStream fs = new FileOutputStream(file);
-            writer = new LocationWriter(fs, template);
+            writer = encoder.newWriter(fs, CompiledLocationTemplate.compile(template));
 
             writer.beginArray();
-            while (cursor.moveToNext()) {
-                BackgroundLocation location = BackgroundLocation.fromCursor(cursor);
-                writer.write(location);
-            }
+            int rows;
+            int pageSize;
+            do {
+                pageSize = (int) Math.min(PAGE_SIZE, batchSize - written);
+                cursor = resolver.query(
+                        LocationContentProvider.buildUriWithLimit(authority, pageSize),
+                        projection,
+                        pageWhereClause,
+                        new String[] { whereArgs[0], whereArgs[1], String.valueOf(lastId) },
+                        LocationEntry._ID + " ASC"
+                );
+
+                LocationCursorReader reader = new LocationCursorReader(cursor);
+                rows = 0;
+                while (cursor.moveToNext()) {
+                    // location is written right away, so single instance is reused for all rows
+                    BackgroundLocation location = reader.read(cursor, flyweight);
+                    writer.write(location);
+                    lastId = location.getLocationId();
+                    rows++;
+                }
+                cursor.close();
+                cursor = null;
+                written += rows;
+            } while (rows == pageSize && written < batchSize);
 
             writer.endArray();
+            // closes file stream as well
             writer.close();
-            fs.close();
+            writer = null;
+            fs = null;
 
             // set batchStartMillis for all synced locations
+            // locations added while batch was being written are left for next batch
             ContentValues values = new ContentValues();
             values.put(LocationEntry.COLUMN_NAME_BATCH_START_MILLIS, batchStartMillis);
-            resolver.update(contentUri, values, whereClause, whereArgs);
+            resolver.update(contentUri, values,
+                    whereClause + " AND " + LocationEntry._ID + " <= ?",
+                    new String[] { whereArgs[0], whereArgs[1], String.valueOf(lastId) });
 
-            logger.info("Batch file: {} created successfully", file.getName());
+            logger.info("Batch file: {} with {} locations created successfully", file.getName(), written);
+            isCreated = true;
 
             return file;
         } finally {
             if (cursor != null) {
                 cursor.close();
             }
-            if (writer != null) {
-                writer.close();
+            if (!isCreated) {
+                closeQuietly(writer != null ? writer : fs);
+                if (file != null && !file.delete()) {
+                    logger.warn("Failed to delete incomplete batch file: {}", file.getName());
+                }
             }
         }
     }
 
-    public File createBatch(Long batchStartMillis, Integer syncThreshold, LocationTemplate template) throws IOException {
+    private void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            logger.warn("Closing batch file failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Write locations pending for sync into batch file
+     *
+     * Locations are written in order they were stored. Only oldest maxBatchSize
+     * locations are included, remaining are left for next batch.
+     *
+     * @param batchStartMillis batch id
+     * @param syncThreshold minimum number of pending locations to create batch
+     * @param template
+     * @param maxBatchSize maximum number of locations in batch or 0 for unlimited
+     * @param isCompressed write gzip compressed batch file
+     * @param encoder payload format of batch file
+     * @return batch file or null when there is nothing to sync
+     * @throws IOException
+     */
+    public File createBatch(Long batchStartMillis, Integer syncThreshold, LocationTemplate template, int maxBatchSize, boolean isCompressed, LocationEncoder encoder) throws IOException {
         LocationTemplate tpl;
         if (template != null) {
             tpl = template;
         } else {
             tpl = LocationTemplateFactory.getDefault();
         }
-        return createBatchFromTemplate(batchStartMillis, syncThreshold, tpl);
+        if (encoder == null) {
+            encoder = LocationEncoderFactory.getDefault();
+        }
+        tpl = encoder.resolveTemplate(tpl);
+        return createBatchFromTemplate(batchStartMillis, syncThreshold, tpl, maxBatchSize, isCompressed, encoder);
+    }
+
+    public File createBatch(Long batchStartMillis, Integer syncThreshold, LocationTemplate template, int maxBatchSize, boolean isCompressed) throws IOException {
+        return createBatch(batchStartMillis, syncThreshold, template, maxBatchSize, isCompressed, null);
+    }
+
+    public File createBatch(Long batchStartMillis, Integer syncThreshold, LocationTemplate template, int maxBatchSize) throws IOException {
+        return createBatch(batchStartMillis, syncThreshold, template, maxBatchSize, false);
+    }
+
+    public File createBatch(Long batchStartMillis, Integer syncThreshold, LocationTemplate template) throws IOException {
+        return createBatch(batchStartMillis, syncThreshold, template, 0);
     }
 
     public File createBatch(Long batchStartMillis, Integer syncThreshold) throws IOException {
@@ -138,109 +303,10 @@ public class BatchManager {
         ContentResolver resolver = context.getApplicationContext().getContentResolver();
         Uri contentUri = getLocationContentUri();
 
-        String whereClause = LocationEntry.COLUMN_NAME_BATCH_START_MILLIS + " = ?";
         String[] whereArgs = { String.valueOf(batchId) };
 
         ContentValues values = new ContentValues();
         values.put(LocationEntry.COLUMN_NAME_STATUS, BackgroundLocation.DELETED);
-        resolver.update(contentUri, values, whereClause, whereArgs);
-    }
-
-    private static class LocationTemplateWriter {
-        private BackgroundLocation location;
-        private JsonWriter writer;
-
-        public LocationTemplateWriter(JsonWriter writer, BackgroundLocation location) {
-            this.writer = writer;
-            this.location = location;
-        }
-
-        private void writeValue(Object value) throws IOException {
-            if (value instanceof String ) {
-                writer.value((String) value);
-            } else if (value instanceof Map) {
-                writeMap((Map) value);
-            } else if (value instanceof List) {
-                writeList((List) value);
-            } else if (Integer.class.isInstance(value)) {
-                writer.value((Integer) value);
-            } else if (Double.class.isInstance(value)) {
-                writer.value((Double) value);
-            } else if (Float.class.isInstance(value)) {
-                writer.value((Float) value);
-            } else if (Long.class.isInstance(value)) {
-                writer.value((Long) value);
-            } else if (Boolean.class.isInstance(value)) {
-                writer.value((Boolean) value);
-            } else if (value == JSONObject.NULL) {
-                writer.nullValue();
-            } else {
-                writer.value(String.valueOf(value));
-            }
-        }
-
-        public void writeMap(Map values) throws IOException {
-            writer.beginObject();
-            Iterator<?> it = values.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<String, Object> pair = (Map.Entry) it.next();
-                String key = pair.getKey();
-                Object value = pair.getValue();
-                Object locationValue = null;
-                if (value instanceof String) {
-                    locationValue = location.getValueForKey((String)value);
-                }
-                writer.name(key);
-                writeValue(locationValue != null ? locationValue : value);
-            }
-            writer.endObject();
-        }
-
-        public void writeList(List values) throws IOException {
-            writer.beginArray();
-            Iterator<?> it = values.iterator();
-            while (it.hasNext()) {
-                Object value = it.next();
-                Object locationValue = null;
-                if (value instanceof  String) {
-                    locationValue = location.getValueForKey((String) value);
-                }
-                writeValue(locationValue != null ? locationValue : value);
-            }
-            writer.endArray();
-        }
-    }
-
-    private static class LocationWriter {
-        private JsonWriter writer = null;
-        private LocationTemplate template;
-
-        public LocationWriter(FileOutputStream fos, LocationTemplate template) throws IOException {
-            writer = new JsonWriter(new OutputStreamWriter(fos, "UTF-8"));
-            this.template = template;
-        }
-
-        public void beginArray() throws IOException {
-            writer.beginArray();
-        }
-
-        public void endArray() throws IOException {
-            writer.endArray();
-        }
-
-        public void close() throws IOException {
-            writer.close();
-        }
-
-        public void write(BackgroundLocation location) throws IOException {
-            LocationTemplateWriter writer = new LocationTemplateWriter(this.writer, location);
-            if (template instanceof HashMapLocationTemplate) {
-                HashMapLocationTemplate hashTemplate = (HashMapLocationTemplate) template;
-                writer.writeMap(hashTemplate.toMap());
-            } else if (template instanceof ArrayListLocationTemplate) {
-                ArrayListLocationTemplate listTemplate = (ArrayListLocationTemplate) template;
-                writer.writeList(listTemplate.toList());
-            }
-        }
+        resolver.update(contentUri, values, LocationEntry.SQL_WHERE_BATCH_START, whereArgs);
     }
 }
@@ -18,6 +18,8 @@ import com.marianhello.bgloc.Config;
 import com.marianhello.bgloc.HttpPostService;
 import com.marianhello.bgloc.data.ConfigurationDAO;
 import com.marianhello.bgloc.data.DAOFactory;
+import com.marianhello.bgloc.data.LocationEncoder;
+import com.marianhello.bgloc.data.LocationEncoderFactory;
 import com.marianhello.bgloc.service.LocationServiceImpl;
 import com.marianhello.logging.LoggerManager;
 
@@ -108,39 +110,60 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter implements HttpPost
         int syncThreshold = isForced ? 0 : config.getSyncThreshold();
         logger.debug("Sync request isForced: {}, batchId: {}, config: {}", isForced, batchStartMillis, config.toString());
 
-        File file = null;
-        try {
-            file = batchManager.createBatch(batchStartMillis, syncThreshold, config.getTemplate());
-        } catch (IOException e) {
-            logger.error("Failed to create batch: {}", e.getMessage());
-        }
+        String url = config.getSyncUrl();
+        int maxBatchSize = config.hasSyncBatchSize() ? config.getSyncBatchSize() : 0;
+        boolean isCompressed = config.hasHttpCompression() && config.getHttpCompression();
+        LocationEncoder encoder = LocationEncoderFactory.fromFormat(config.getPayloadFormat());
+        long batchId = batchStartMillis;
+        int batchCount = 0;
+
+        // upload pending locations in bounded batches, each batch is completed as soon as
+        // server acknowledges it, so failed upload is retried only from failed batch
+        while (true) {
+            File file = null;
+            try {
+                file = batchManager.createBatch(batchId, syncThreshold, config.getTemplate(), maxBatchSize, isCompressed, encoder);
+            } catch (IOException e) {
+                logger.error("Failed to create batch: {}", e.getMessage());
+            }
 
-        if (file == null) {
-            logger.info("Nothing to sync");
-            return;
-        }
+            if (file == null) {
+                if (batchCount == 0) {
+                    logger.info("Nothing to sync");
+                }
+                return;
+            }
 
-        logger.info("Syncing startAt: {}", batchStartMillis);
-        String url = config.getSyncUrl();
-        HashMap<String, String> httpHeaders = new HashMap<String, String>();
-        httpHeaders.putAll(config.getHttpHeaders());
-        httpHeaders.put("x-batch-id", String.valueOf(batchStartMillis));
+            logger.info("Syncing batchId: {} startAt: {}", batchId, batchStartMillis);
+            HashMap<String, String> httpHeaders = new HashMap<String, String>();
+            httpHeaders.putAll(config.getHttpHeaders());
+            httpHeaders.put("x-batch-id", String.valueOf(batchId));
 
-        if (uploadLocations(file, url, httpHeaders)) {
-            logger.info("Batch sync successful");
-            batchManager.setBatchCompleted(batchStartMillis);
+            boolean isUploaded = uploadLocations(file, encoder.getContentType(), isCompressed, url, httpHeaders);
             if (file.delete()) {
                 logger.info("Batch file has been deleted: {}", file.getAbsolutePath());
             } else {
                 logger.warn("Batch file has not been deleted: {}", file.getAbsolutePath());
             }
-        } else {
-            logger.warn("Batch sync failed due server error");
-            syncResult.stats.numIoExceptions++;
+
+            if (!isUploaded) {
+                logger.warn("Batch sync failed due server error");
+                syncResult.stats.numIoExceptions++;
+                return;
+            }
+
+            logger.info("Batch sync successful");
+            batchManager.setBatchCompleted(batchId);
+            batchCount++;
+
+            // remaining locations are synced regardless of threshold
+            syncThreshold = 0;
+            // batch ids are strictly increasing, so server can detect replayed batches
+            batchId = Math.max(batchId + 1, System.currentTimeMillis());
         }
     }
 
-    private boolean uploadLocations(File file, String url, HashMap httpHeaders) {
+    private boolean uploadLocations(File file, String contentType, boolean isCompressed, String url, HashMap httpHeaders) {
         NotificationCompat.Builder builder = null;
 
         if (notificationsEnabled) {
@@ -153,7 +176,7 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter implements HttpPost
         }
 
         try {
-            int responseCode = HttpPostService.postJSONFile(url, file, httpHeaders, this);
+            int responseCode = HttpPostService.postFile(url, file, contentType, isCompressed, httpHeaders, this);
 
             // All 2xx statuses are okay
             boolean isStatusOkay = responseCode >= 200 && responseCode < 300;
@@ -22,16 +22,18 @@ import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.SystemClock;
 
 import com.marianhello.bgloc.Config;
+import com.marianhello.bgloc.data.BackgroundLocation;
 import com.marianhello.bgloc.provider.AbstractLocationProvider;
+import com.marianhello.bgloc.provider.AdaptiveSamplingController;
+import com.marianhello.bgloc.provider.LocationArbiter;
 import com.marianhello.utils.ToneGenerator.Tone;
 
 import java.util.List;
 
 import static java.lang.Math.abs;
-import static java.lang.Math.pow;
-import static java.lang.Math.round;
 
 
 public class DistanceFilterLocationProvider extends AbstractLocationProvider implements LocationListener {
@@ -49,11 +51,14 @@ public class DistanceFilterLocationProvider extends AbstractLocationProvider imp
     private static final long STATIONARY_LOCATION_POLLING_INTERVAL_AGGRESSIVE   = 1 * 1000 * 60;    // 1 minute.
     private static final int MAX_STATIONARY_ACQUISITION_ATTEMPTS = 5;
     private static final int MAX_SPEED_ACQUISITION_ATTEMPTS = 3;
+    private static final long ACQUISITION_WINDOW_MILLIS = 2 * 1000;
+    private static final float ACQUISITION_ACCURACY_TARGET = 20;       // meters, gps-grade fix
 
     private Boolean isMoving = false;
     private Boolean isAcquiringStationaryLocation = false;
     private Boolean isAcquiringSpeed = false;
-    private Integer locationAcquisitionAttempts = 0;
+    private LocationArbiter acquisitionArbiter;
+    private Location acquisitionBestLocation;
 
     private Location lastLocation;
     private Location stationaryLocation;
@@ -63,7 +68,7 @@ public class DistanceFilterLocationProvider extends AbstractLocationProvider imp
     private long stationaryLocationPollingInterval;
     private PendingIntent stationaryRegionPI;
     private PendingIntent singleUpdatePI;
-    private Integer scaledDistanceFilter;
+    private AdaptiveSamplingController samplingController;
 
     private Criteria criteria;
 
@@ -115,7 +120,8 @@ public class DistanceFilterLocationProvider extends AbstractLocationProvider imp
         }
 
         logger.info("Start recording");
-        scaledDistanceFilter = mConfig.getDistanceFilter();
+        super.onStart();
+        samplingController = new AdaptiveSamplingController(mConfig.getDistanceFilter(), mConfig.getInterval());
         isStarted = true;
         setPace(false);
     }
@@ -134,6 +140,7 @@ public class DistanceFilterLocationProvider extends AbstractLocationProvider imp
         } finally {
             isStarted = false;
         }
+        super.onStop();
     }
 
     @Override
@@ -193,7 +200,8 @@ public class DistanceFilterLocationProvider extends AbstractLocationProvider imp
 
             // Temporarily turn on super-aggressive geolocation on all providers when acquiring velocity or stationary location.
             if (isAcquiringSpeed || isAcquiringStationaryLocation) {
-                locationAcquisitionAttempts = 0;
+                acquisitionArbiter = new LocationArbiter(getAcquisitionAccuracyTarget(), ACQUISITION_WINDOW_MILLIS);
+                acquisitionBestLocation = null;
                 // Turn on each provider aggressively for a short period of time
                 List<String> matchingProviders = locationManager.getAllProviders();
                 for (String provider: matchingProviders) {
@@ -202,7 +210,8 @@ public class DistanceFilterLocationProvider extends AbstractLocationProvider imp
                     }
                 }
             } else {
-                locationManager.requestLocationUpdates(locationManager.getBestProvider(criteria, true), mConfig.getInterval(), scaledDistanceFilter, this);
+                locationManager.requestLocationUpdates(locationManager.getBestProvider(criteria, true),
+                        samplingController.getInterval(), samplingController.getDistanceFilter(), this);
             }
         } catch (SecurityException e) {
             logger.error("Security exception: {}", e.getMessage());
@@ -288,16 +297,16 @@ public class DistanceFilterLocationProvider extends AbstractLocationProvider imp
             setPace(false);
         }
 
-        showDebugToast( "mv:" + isMoving + ",acy:" + location.getAccuracy() + ",v:" + location.getSpeed() + ",df:" + scaledDistanceFilter);
+        showDebugToast( "mv:" + isMoving + ",acy:" + location.getAccuracy() + ",v:" + location.getSpeed() + ",df:" + samplingController.getDistanceFilter());
 
         if (isAcquiringStationaryLocation) {
-            if (stationaryLocation == null || stationaryLocation.getAccuracy() > location.getAccuracy()) {
-                stationaryLocation = location;
-            }
-            if (++locationAcquisitionAttempts == MAX_STATIONARY_ACQUISITION_ATTEMPTS) {
+            offerAcquisitionCandidate(location);
+            if (acquisitionArbiter.isAccuracyTargetMet()
+                    || acquisitionArbiter.getWindowCount() >= MAX_STATIONARY_ACQUISITION_ATTEMPTS) {
                 isAcquiringStationaryLocation = false;
-                startMonitoringStationaryRegion(stationaryLocation);
-                handleStationary(stationaryLocation, stationaryRadius);
+                logAcquisitionResult();
+                startMonitoringStationaryRegion(acquisitionBestLocation);
+                handleStationary(acquisitionBestLocation, stationaryRadius);
                 return;
             } else {
                 // Unacceptable stationary-location: bail-out and wait for another.
@@ -305,11 +314,15 @@ public class DistanceFilterLocationProvider extends AbstractLocationProvider imp
                 return;
             }
         } else if (isAcquiringSpeed) {
-            if (++locationAcquisitionAttempts == MAX_SPEED_ACQUISITION_ATTEMPTS) {
-                // Got enough samples, assume we're confident in reported speed now.  Play "woohoo" sound.
+            offerAcquisitionCandidate(location);
+            if ((acquisitionArbiter.isAccuracyTargetMet() && acquisitionBestLocation.hasSpeed())
+                    || acquisitionArbiter.getWindowCount() >= MAX_SPEED_ACQUISITION_ATTEMPTS) {
+                // Got accurate or enough samples, assume we're confident in reported speed now.  Play "woohoo" sound.
                 playDebugTone(Tone.DOODLY_DOO);
                 isAcquiringSpeed = false;
-                scaledDistanceFilter = calculateDistanceFilter(location.getSpeed());
+                logAcquisitionResult();
+                // best candidate only seeds sampling, current fix is the one recorded below
+                samplingController.reset(acquisitionBestLocation.getSpeed(), SystemClock.elapsedRealtime());
                 setPace(true);
             } else {
                 playDebugTone(Tone.BEEP);
@@ -322,11 +335,12 @@ public class DistanceFilterLocationProvider extends AbstractLocationProvider imp
             if ( (location.getSpeed() >= 1) && (location.getAccuracy() <= mConfig.getStationaryRadius()) ) {
                 resetStationaryAlarm();
             }
-            // Calculate latest distanceFilter, if it changed by 5 m/s, we'll reconfigure our pace.
-            Integer newDistanceFilter = calculateDistanceFilter(location.getSpeed());
-            if (newDistanceFilter != scaledDistanceFilter.intValue()) {
-                logger.info("Updating distanceFilter: new={} old={}", newDistanceFilter, scaledDistanceFilter);
-                scaledDistanceFilter = newDistanceFilter;
+            // Feed smoothed speed estimate, reconfigure our pace only when sampling changed significantly.
+            if (location.hasSpeed() && samplingController.onSpeed(location.getSpeed(), SystemClock.elapsedRealtime())) {
+                logger.info("Updating sampling: speed={} distanceFilter={} interval={} reconfigurations={} suppressed={} samples={}",
+                        samplingController.getSmoothedSpeed(), samplingController.getDistanceFilter(),
+                        samplingController.getInterval(), samplingController.getReconfigurationCount(),
+                        samplingController.getSuppressedCount(), samplingController.getSampleCount());
                 setPace(true);
             }
             if (lastLocation != null && location.distanceTo(lastLocation) < mConfig.getDistanceFilter()) {
@@ -340,20 +354,36 @@ public class DistanceFilterLocationProvider extends AbstractLocationProvider imp
         handleLocation(location);
     }
 
+    /**
+     * Offer location to acquisition arbiter and remember it, if it became best candidate.
+     */
+    private void offerAcquisitionCandidate(Location location) {
+        if (acquisitionArbiter.offer(BackgroundLocation.fromLocation(location), SystemClock.elapsedRealtime())) {
+            acquisitionBestLocation = location;
+        }
+    }
+
+    private void logAcquisitionResult() {
+        logger.info("Acquired location: provider={} acy={} candidates={} windows={} targetMet={}",
+                acquisitionBestLocation.getProvider(), acquisitionBestLocation.getAccuracy(),
+                acquisitionArbiter.getCandidateCount(), acquisitionArbiter.getWindowCount(),
+                acquisitionArbiter.isAccuracyTargetMet());
+    }
+
+    /**
+     * Accuracy, which ends high-power acquisition phase early.
+     * Fixed gps-grade value, so coarse network fix does not end acquisition
+     * regardless of desiredAccuracy (which is only power hint for provider criteria).
+     */
+    private float getAcquisitionAccuracyTarget() {
+        return ACQUISITION_ACCURACY_TARGET;
+    }
+
     public void resetStationaryAlarm() {
         alarmManager.cancel(stationaryAlarmPI);
         alarmManager.set(AlarmManager.RTC_WAKEUP, System.currentTimeMillis() + STATIONARY_TIMEOUT, stationaryAlarmPI); // Millisec * Second * Minute
     }
 
-    private Integer calculateDistanceFilter(Float speed) {
-        Double newDistanceFilter = (double) mConfig.getDistanceFilter();
-        if (speed < 100) {
-            float roundedDistanceFilter = (round(speed / 5) * 5);
-            newDistanceFilter = pow(roundedDistanceFilter, 2) + (double) mConfig.getDistanceFilter();
-        }
-        return (newDistanceFilter.intValue() < 1000) ? newDistanceFilter.intValue() : 1000;
-    }
-
     private void startMonitoringStationaryRegion(Location location) {
         try {
             locationManager.removeUpdates(this);
@@ -0,0 +1,59 @@
+package com.marianhello.backgroundgeolocation;
+
+import com.marianhello.bgloc.provider.AdaptiveSamplingController;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class AdaptiveSamplingControllerTest {
+
+    @Test
+    public void shouldDeriveSettingsFromSpeed() {
+        AdaptiveSamplingController controller = new AdaptiveSamplingController(10, 1000);
+
+        controller.reset(20, 0);
+        assertThat(controller.getDistanceFilter(), is(410));
+        assertThat(controller.getInterval(), is(10250L));
+
+        controller.reset(0.5f, 0);
+        assertThat(controller.getDistanceFilter(), is(10));
+        assertThat(controller.getInterval(), is(1000L));
+
+        controller.reset(50, 0);
+        assertThat(controller.getDistanceFilter(), is(AdaptiveSamplingController.MAX_DISTANCE_FILTER));
+    }
+
+    @Test
+    public void shouldNotReconfigureOnSpeedFluctuation() {
+        AdaptiveSamplingController controller = new AdaptiveSamplingController(10, 1000);
+        controller.reset(28, 0);
+
+        // highway driving, speed fluctuating between 25 and 31 m/s
+        for (int i = 1; i <= 600; i++) {
+            float speed = (i % 2 == 0) ? 25 : 31;
+            assertThat(controller.onSpeed(speed, i * 1000L), is(false));
+        }
+        assertThat(controller.getReconfigurationCount(), is(0L));
+        assertThat(controller.getSampleCount(), is(600L));
+        assertThat(controller.getDistanceFilter(), is(794));
+    }
+
+    @Test
+    public void shouldReconfigureOnSustainedChangeAfterHoldTime() {
+        AdaptiveSamplingController controller = new AdaptiveSamplingController(10, 1000);
+        controller.reset(28, 0);
+
+        long reconfiguredAt = -1;
+        for (int i = 1; i <= 60; i++) {
+            if (controller.onSpeed(10, i * 1000L) && reconfiguredAt < 0) {
+                reconfiguredAt = i * 1000L;
+            }
+        }
+        assertThat(reconfiguredAt, is(AdaptiveSamplingController.MIN_HOLD_MILLIS));
+        assertThat(controller.getReconfigurationCount(), is(1L));
+        assertThat(controller.getSuppressedCount() > 0, is(true));
+        assertThat(controller.getDistanceFilter() < 200, is(true));
+    }
+}
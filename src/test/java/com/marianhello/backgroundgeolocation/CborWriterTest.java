@@ -0,0 +1,116 @@
+package com.marianhello.backgroundgeolocation;
+
+import com.marianhello.bgloc.data.CborWriter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Expected values are taken from RFC 7049 Appendix A
+ */
+public class CborWriterTest {
+    private interface Writes {
+        void write(CborWriter writer) throws IOException;
+    }
+
+    private static String hex(Writes writes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writes.write(new CborWriter(out));
+        StringBuilder sb = new StringBuilder();
+        for (byte b : out.toByteArray()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    private static String hex(final long value) throws IOException {
+        return hex(new Writes() {
+            @Override
+            public void write(CborWriter writer) throws IOException {
+                writer.value(value);
+            }
+        });
+    }
+
+    private static String hex(final double value) throws IOException {
+        return hex(new Writes() {
+            @Override
+            public void write(CborWriter writer) throws IOException {
+                writer.value(value);
+            }
+        });
+    }
+
+    @Test
+    public void testIntegers() throws IOException {
+        assertThat(hex(0L), is("00"));
+        assertThat(hex(23L), is("17"));
+        assertThat(hex(24L), is("1818"));
+        assertThat(hex(1000L), is("1903e8"));
+        assertThat(hex(1000000L), is("1a000f4240"));
+        assertThat(hex(1000000000000L), is("1b000000e8d4a51000"));
+        assertThat(hex(-1L), is("20"));
+        assertThat(hex(-1000L), is("3903e7"));
+        assertThat(hex(Long.MIN_VALUE), is("3b7fffffffffffffff"));
+    }
+
+    @Test
+    public void testFloatingPoint() throws IOException {
+        assertThat(hex(1.1), is("fb3ff199999999999a"));
+        assertThat(hex(100000.0), is("fa47c35000"));
+        assertThat(hex(new Writes() {
+            @Override
+            public void write(CborWriter writer) throws IOException {
+                writer.value(3.4028234663852886e+38f);
+            }
+        }), is("fa7f7fffff"));
+    }
+
+    @Test
+    public void testSimpleValues() throws IOException {
+        assertThat(hex(new Writes() {
+            @Override
+            public void write(CborWriter writer) throws IOException {
+                writer.value(false);
+                writer.value(true);
+                writer.nullValue();
+            }
+        }), is("f4f5f6"));
+    }
+
+    @Test
+    public void testStrings() throws IOException {
+        assertThat(hex(new Writes() {
+            @Override
+            public void write(CborWriter writer) throws IOException {
+                writer.value("");
+                writer.value("a");
+                writer.value("\u00fc");
+            }
+        }), is("606161" + "62c3bc"));
+    }
+
+    @Test
+    public void testIndefiniteContainers() throws IOException {
+        // {_ "a": 1, "b": [_ 2, 3]}
+        assertThat(hex(new Writes() {
+            @Override
+            public void write(CborWriter writer) throws IOException {
+                writer.beginObject();
+                writer.name("a");
+                writer.value(1L);
+                writer.name("b");
+                writer.beginArray();
+                writer.value(2L);
+                writer.value(3L);
+                writer.endArray();
+                writer.endObject();
+            }
+        }), is("bf61610161629f0203ffff"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.marianhello.backgroundgeolocation;
+
+import com.marianhello.bgloc.CircuitBreaker;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class CircuitBreakerTest {
+
+    private static class NoJitterRandom extends Random {
+        @Override
+        public double nextDouble() {
+            return 0;
+        }
+    }
+
+    @Test
+    public void shouldOpenAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, 60000, new NoJitterRandom());
+
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        assertThat(breaker.allowRequest(0), is(true));
+        breaker.onFailure(0);
+        assertThat(breaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(breaker.allowRequest(0), is(false));
+    }
+
+    @Test
+    public void shouldResetFailuresOnSuccess() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, 60000, new NoJitterRandom());
+
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        assertThat(breaker.onSuccess(), is(false));
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        assertThat(breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void shouldProbeAfterBackoffAndClose() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, 60000, new NoJitterRandom());
+
+        breaker.onFailure(0);
+        assertThat(breaker.allowRequest(499), is(false));
+        assertThat(breaker.allowRequest(500), is(true));
+        assertThat(breaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertThat(breaker.onSuccess(), is(true));
+        assertThat(breaker.getState(), is(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void shouldDoubleBackoffOnFailedProbe() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, 3000, new NoJitterRandom());
+
+        breaker.onFailure(0);
+        assertThat(breaker.allowRequest(500), is(true));
+        breaker.onFailure(500);
+        assertThat(breaker.allowRequest(1499), is(false));
+        assertThat(breaker.allowRequest(1500), is(true));
+        breaker.onFailure(1500);
+        // capped by max backoff
+        assertThat(breaker.allowRequest(2999), is(false));
+        assertThat(breaker.allowRequest(3000), is(true));
+    }
+
+    @Test
+    public void shouldReportRetryDelayWhenOpened() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 1000, 60000, new NoJitterRandom());
+
+        assertThat(breaker.onFailure(0), is(false));
+        assertThat(breaker.getRetryDelay(0), is(0L));
+        assertThat(breaker.onFailure(100), is(true));
+        assertThat(breaker.getRetryDelay(100), is(500L));
+        assertThat(breaker.getRetryDelay(400), is(200L));
+        assertThat(breaker.getRetryDelay(700), is(0L));
+    }
+}
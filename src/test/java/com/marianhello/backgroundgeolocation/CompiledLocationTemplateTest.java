@@ -0,0 +1,109 @@
+package com.marianhello.backgroundgeolocation;
+
+import com.marianhello.bgloc.data.ArrayListLocationTemplate;
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.CompiledLocationTemplate;
+import com.marianhello.bgloc.data.HashMapLocationTemplate;
+import com.marianhello.bgloc.data.JsonLocationEncoder;
+import com.marianhello.bgloc.data.LocationEncoder;
+import com.marianhello.bgloc.data.LocationTemplate;
+
+import junit.framework.Assert;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class CompiledLocationTemplateTest {
+    private BackgroundLocation createLocation() {
+        BackgroundLocation location = new BackgroundLocation();
+        location.setLocationId(11L);
+        location.setProvider("test");
+        location.setElapsedRealtimeNanos(2000000000L * 60 * 2);
+        location.setAltitude(100);
+        location.setLatitude(49.1234567);
+        location.setLongitude(5.7654321);
+        location.setLocationProvider(1);
+        location.setAccuracy(10.5f);
+        location.setSpeed(50);
+        return location;
+    }
+
+    private static String render(CompiledLocationTemplate compiled, BackgroundLocation location) throws IOException, JSONException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LocationEncoder.Writer writer = new JsonLocationEncoder().newWriter(out, compiled);
+        writer.beginArray();
+        writer.write(location);
+        writer.endArray();
+        writer.close();
+        return new JSONArray(out.toString("UTF-8")).get(0).toString();
+    }
+
+    @Test
+    public void testHashMapTemplateMatchesLocationToJson() throws IOException, JSONException {
+        ArrayList coords = new ArrayList();
+        coords.add("@latitude");
+        coords.add("@longitude");
+        HashMap nested = new HashMap();
+        nested.put("coords", coords);
+        nested.put("bearing", "@bearing");
+
+        HashMap map = new HashMap();
+        map.put("id", "@id");
+        map.put("provider", "@provider");
+        map.put("locationProvider", "@locationProvider");
+        map.put("time", "@time");
+        map.put("altitude", "@altitude");
+        map.put("accuracy", "@accuracy");
+        map.put("speed", "@speed");
+        map.put("radius", "@radius");
+        map.put("mock", "@isFromMockProvider");
+        map.put("nested", nested);
+        map.put("foo", "bar");
+        map.put("pretzels", 123);
+
+        LocationTemplate tpl = new HashMapLocationTemplate(map);
+        CompiledLocationTemplate compiled = CompiledLocationTemplate.compile(tpl);
+        BackgroundLocation location = createLocation();
+
+        Assert.assertEquals(tpl.locationToJson(location).toString(), render(compiled, location));
+    }
+
+    @Test
+    public void testArrayListTemplateMatchesLocationToJson() throws IOException, JSONException {
+        ArrayList list = new ArrayList();
+        list.add("@id");
+        list.add("@time");
+        list.add("@latitude");
+        list.add("@longitude");
+        list.add("@accuracy");
+        list.add("@bearing");
+        list.add("foo");
+        list.add(true);
+
+        LocationTemplate tpl = new ArrayListLocationTemplate(list);
+        CompiledLocationTemplate compiled = CompiledLocationTemplate.compile(tpl);
+        BackgroundLocation location = createLocation();
+
+        Assert.assertEquals(tpl.locationToJson(location).toString(), render(compiled, location));
+    }
+
+    @Test
+    public void testUnsetFieldsRenderedAsKey() throws IOException, JSONException {
+        ArrayList list = new ArrayList();
+        list.add("@id");
+        list.add("@provider");
+
+        LocationTemplate tpl = new ArrayListLocationTemplate(list);
+        CompiledLocationTemplate compiled = CompiledLocationTemplate.compile(tpl);
+        BackgroundLocation location = new BackgroundLocation();
+
+        Assert.assertEquals("[\"@id\",\"@provider\"]", render(compiled, location));
+        Assert.assertEquals(tpl.locationToJson(location).toString(), render(compiled, location));
+    }
+}
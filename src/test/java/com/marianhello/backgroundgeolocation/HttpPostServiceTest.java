@@ -28,11 +28,15 @@ import java.net.MalformedURLException;
 import java.net.UnknownHostException;
 import java.util.HashMap;
 import java.util.Random;
+import java.util.zip.GZIPInputStream;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -84,6 +88,32 @@ public class HttpPostServiceTest {
     }
 
 
+    @Test
+    public void testPostJSONDrainsResponse() throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final ByteArrayInputStream inputStream = new ByteArrayInputStream("{\"status\":\"ok\"}".getBytes());
+        when(mockHttpURLConnection.getOutputStream()).thenReturn(outputStream);
+        when(mockHttpURLConnection.getInputStream()).thenReturn(inputStream);
+        when(mockHttpURLConnection.getResponseCode()).thenReturn(200);
+
+        HttpPostService service = new HttpPostService(mockHttpURLConnection);
+        assertThat(service.postJSON(new JSONArray(), null), is(200));
+        assertThat(inputStream.available(), is(0));
+    }
+
+    @Test
+    public void testPostJSONDrainsErrorResponse() throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final ByteArrayInputStream errorStream = new ByteArrayInputStream("Internal Server Error".getBytes());
+        when(mockHttpURLConnection.getOutputStream()).thenReturn(outputStream);
+        when(mockHttpURLConnection.getErrorStream()).thenReturn(errorStream);
+        when(mockHttpURLConnection.getResponseCode()).thenReturn(500);
+
+        HttpPostService service = new HttpPostService(mockHttpURLConnection);
+        assertThat(service.postJSON(new JSONArray(), null), is(500));
+        assertThat(errorStream.available(), is(0));
+    }
+
     @Test
     public void testPostJSONShouldPostHeaders() throws IOException {
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -155,6 +185,40 @@ public class HttpPostServiceTest {
         assertThat(outputStream.toString(), is("test"));
     }
 
+    @Test
+    public void testPostCompressedString() throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        when(mockHttpURLConnection.getOutputStream()).thenReturn(outputStream);
+
+        String body = "[{\"latitude\":49.1,\"longitude\":18.2},{\"latitude\":49.1,\"longitude\":18.2}]";
+        HttpPostService service = new HttpPostService(mockHttpURLConnection);
+        service.setCompressionEnabled(true);
+        service.postJSONString(body, null);
+        verify(mockHttpURLConnection).setRequestProperty("Content-Encoding", "gzip");
+        verify(mockHttpURLConnection).setFixedLengthStreamingMode(outputStream.size());
+
+        InputStream is = new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[HttpPostService.BUFFER_SIZE];
+        int bytesRead;
+        while ((bytesRead = is.read(buffer)) != -1) {
+            decompressed.write(buffer, 0, bytesRead);
+        }
+        assertThat(decompressed.toString("UTF-8"), is(body));
+    }
+
+    @Test
+    public void testPostStringFixedLengthInBytes() throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        when(mockHttpURLConnection.getOutputStream()).thenReturn(outputStream);
+
+        String body = "\"\u017Dilina\"";
+        HttpPostService service = new HttpPostService(mockHttpURLConnection);
+        service.postJSONString(body, null);
+        verify(mockHttpURLConnection).setFixedLengthStreamingMode(body.getBytes("UTF-8").length);
+        assertThat(outputStream.toString("UTF-8"), is(body));
+    }
+
     @Test
     public void testPostStream() throws Exception {
         TestHelper.setFinalStatic(Build.VERSION.class.getField("SDK_INT"), Build.VERSION_CODES.KITKAT);
@@ -199,6 +263,41 @@ public class HttpPostServiceTest {
         //verify(mockHttpURLConnection).setChunkedStreamingMode(0);
     }
 
+    @Test
+    public void testPostCompressedFile() throws Exception {
+        TestHelper.setFinalStatic(Build.VERSION.class.getField("SDK_INT"), Build.VERSION_CODES.KITKAT);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        when(mockHttpURLConnection.getOutputStream()).thenReturn(outputStream);
+        when(mockHttpURLConnection.getResponseCode()).thenReturn(200);
+
+        File file = new File("./README.md");
+
+        HttpPostService service = new HttpPostService(mockHttpURLConnection);
+        assertThat(service.postFile(file, "application/json", true, null, null), is(200));
+        verify(mockHttpURLConnection).setRequestProperty("Content-Encoding", "gzip");
+        // file is sent as it is
+        verify(mockHttpURLConnection).setFixedLengthStreamingMode((long) file.length());
+        assertThat((long) outputStream.size(), is(file.length()));
+    }
+
+    @Test
+    public void testCompressionEnabledDoesNotApplyToFile() throws Exception {
+        TestHelper.setFinalStatic(Build.VERSION.class.getField("SDK_INT"), Build.VERSION_CODES.KITKAT);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        when(mockHttpURLConnection.getOutputStream()).thenReturn(outputStream);
+        when(mockHttpURLConnection.getResponseCode()).thenReturn(200);
+
+        File file = new File("./README.md");
+
+        HttpPostService service = new HttpPostService(mockHttpURLConnection);
+        service.setCompressionEnabled(true);
+        assertThat(service.postJSONFile(file, null, null), is(200));
+        verify(mockHttpURLConnection, never()).setRequestProperty("Content-Encoding", "gzip");
+        assertThat((long) outputStream.size(), is(file.length()));
+    }
+
     @Test
     public void testJSONPostFileProgressListener() throws IOException {
         HttpPostService service = new HttpPostService(mockHttpURLConnection);
@@ -220,4 +319,27 @@ public class HttpPostServiceTest {
         inOrder.verify(mockListener).onProgress(80);
         inOrder.verify(mockListener).onProgress(100);
     }
+
+    @Test
+    public void testJSONPostFileProgressListenerThrottled() throws IOException {
+        HttpPostService service = new HttpPostService(mockHttpURLConnection);
+        UploadingProgressListener mockListener = mock(UploadingProgressListener.class);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        when(mockHttpURLConnection.getOutputStream()).thenReturn(outputStream);
+
+        int bufferSize = 1024;
+        byte[] body = new byte[bufferSize * 1000];
+        new Random().nextBytes(body);
+        InputStream inputStream = new ByteArrayInputStream(body);
+
+        service.setBufferSize(bufferSize);
+        service.setProgressInterval(60000);
+        service.postJSONFile(inputStream, null, mockListener);
+        InOrder inOrder = inOrder(mockListener);
+        inOrder.verify(mockListener).onProgress(0);
+        inOrder.verify(mockListener).onProgress(100);
+        verify(mockListener, times(2)).onProgress(anyInt());
+        assertThat(outputStream.size(), is(body.length));
+    }
 }
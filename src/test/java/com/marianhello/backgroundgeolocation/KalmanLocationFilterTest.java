@@ -0,0 +1,84 @@
+package com.marianhello.backgroundgeolocation;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.provider.KalmanLocationFilter;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class KalmanLocationFilterTest {
+    // approx. meters per degree of latitude
+    private static final double METERS_PER_DEGREE = 111195;
+
+    private static BackgroundLocation createLocation(double northMeters, double eastMeters, long timeMillis, float accuracy) {
+        BackgroundLocation location = new BackgroundLocation();
+        location.setLatitude(northMeters / METERS_PER_DEGREE);
+        location.setLongitude(eastMeters / METERS_PER_DEGREE);
+        location.setTime(timeMillis);
+        location.setAccuracy(accuracy);
+        return location;
+    }
+
+    @Test
+    public void shouldDropStationaryJitter() {
+        KalmanLocationFilter filter = new KalmanLocationFilter();
+        Random random = new Random(1);
+        int delivered = 0;
+        for (int i = 0; i < 60; i++) {
+            BackgroundLocation location = createLocation(random.nextGaussian() * 3, random.nextGaussian() * 3, i * 1000, 10);
+            if (filter.filter(location) != null) {
+                delivered++;
+            }
+        }
+        assertThat(delivered < 10, is(true));
+    }
+
+    @Test
+    public void shouldTrackMovement() {
+        KalmanLocationFilter filter = new KalmanLocationFilter();
+        Random random = new Random(1);
+        int delivered = 0;
+        BackgroundLocation last = null;
+        for (int i = 0; i < 60; i++) {
+            // 10 m/s to north
+            BackgroundLocation location = createLocation(i * 10 + random.nextGaussian() * 3, random.nextGaussian() * 3, i * 1000, 5);
+            BackgroundLocation result = filter.filter(location);
+            if (result != null) {
+                delivered++;
+                last = result;
+            }
+        }
+        assertThat(delivered > 50, is(true));
+        assertEquals(590, last.getLatitude() * METERS_PER_DEGREE, 10);
+        assertEquals(0, last.getLongitude() * METERS_PER_DEGREE, 10);
+    }
+
+    @Test
+    public void shouldRejectOutliers() {
+        KalmanLocationFilter filter = new KalmanLocationFilter();
+        assertThat(filter.filter(createLocation(0, 0, 0, 10)) != null, is(true));
+        assertThat(filter.filter(createLocation(50, 0, 1000, 10)) != null, is(true));
+        // 5 km in one second
+        assertThat(filter.filter(createLocation(5050, 0, 2000, 10)) == null, is(true));
+        // too inaccurate
+        assertThat(filter.filter(createLocation(100, 0, 3000, 500)) == null, is(true));
+        // duplicate
+        assertThat(filter.filter(createLocation(50, 0, 1000, 10)) == null, is(true));
+    }
+
+    @Test
+    public void shouldRestartAfterConsistentOutliers() {
+        KalmanLocationFilter filter = new KalmanLocationFilter();
+        filter.filter(createLocation(0, 0, 0, 10));
+        assertThat(filter.filter(createLocation(10000, 0, 1000, 10)) == null, is(true));
+        assertThat(filter.filter(createLocation(10000, 0, 2000, 10)) == null, is(true));
+        BackgroundLocation location = filter.filter(createLocation(10000, 0, 3000, 10));
+        assertThat(location != null, is(true));
+        assertEquals(10000, location.getLatitude() * METERS_PER_DEGREE, 1);
+    }
+}
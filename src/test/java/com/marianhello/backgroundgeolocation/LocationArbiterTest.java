@@ -0,0 +1,61 @@
+package com.marianhello.backgroundgeolocation;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.provider.LocationArbiter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class LocationArbiterTest {
+
+    @Before
+    public void setUp() {
+        BackgroundLocationTest.setSDKVersion(17);
+    }
+
+    private static BackgroundLocation createLocation(String provider, float accuracy, long elapsedMillis) {
+        BackgroundLocation location = new BackgroundLocation();
+        location.setProvider(provider);
+        location.setLatitude(49);
+        location.setLongitude(5);
+        location.setAccuracy(accuracy);
+        location.setElapsedRealtimeNanos(elapsedMillis * 1000000L);
+        return location;
+    }
+
+    @Test
+    public void shouldPreferAccurateCandidate() {
+        LocationArbiter arbiter = new LocationArbiter(20, 2000);
+        BackgroundLocation network = createLocation("network", 40, 0);
+        BackgroundLocation gps = createLocation("gps", 15, 500);
+
+        assertThat(arbiter.offer(network, 0), is(true));
+        assertThat(arbiter.isAccuracyTargetMet(), is(false));
+        assertThat(arbiter.offer(gps, 500), is(true));
+        assertThat(arbiter.isAccuracyTargetMet(), is(true));
+
+        // newer, but less accurate fix from other provider does not win
+        assertThat(arbiter.offer(createLocation("network", 40, 1000), 1000), is(false));
+        assertThat(arbiter.getBest(), is(gps));
+    }
+
+    @Test
+    public void shouldCountWindowsInsteadOfCallbacks() {
+        LocationArbiter arbiter = new LocationArbiter(5, 2000);
+
+        // burst of cheap fixes is single attempt
+        for (int i = 0; i < 5; i++) {
+            arbiter.offer(createLocation("network", 40, i * 100), i * 100);
+        }
+        assertThat(arbiter.getCandidateCount(), is(5));
+        assertThat(arbiter.getWindowCount(), is(0));
+
+        arbiter.offer(createLocation("network", 40, 2400), 2400);
+        arbiter.offer(createLocation("network", 40, 4400), 4400);
+        assertThat(arbiter.getWindowCount(), is(2));
+        assertThat(arbiter.isAccuracyTargetMet(), is(false));
+    }
+}
@@ -0,0 +1,68 @@
+package com.marianhello.backgroundgeolocation;
+
+import android.database.MatrixCursor;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.LocationCursorReader;
+import com.marianhello.bgloc.data.sqlite.SQLiteLocationContract.LocationEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class LocationCursorReaderTest {
+
+    private MatrixCursor createCursor() {
+        MatrixCursor cursor = new MatrixCursor(new String[] {
+                LocationEntry._ID,
+                LocationEntry.COLUMN_NAME_TIME,
+                LocationEntry.COLUMN_NAME_LATITUDE,
+                LocationEntry.COLUMN_NAME_LONGITUDE,
+                LocationEntry.COLUMN_NAME_ACCURACY,
+                LocationEntry.COLUMN_NAME_HAS_ACCURACY,
+        });
+        cursor.addRow(new Object[] { 1L, 1000L, 49.0, 17.0, 10f, 1 });
+        cursor.addRow(new Object[] { 2L, 2000L, 49.1, 17.1, 0f, 0 });
+        return cursor;
+    }
+
+    @Test
+    public void testReadProjectionSubset() {
+        MatrixCursor cursor = createCursor();
+        LocationCursorReader reader = new LocationCursorReader(cursor);
+
+        cursor.moveToNext();
+        BackgroundLocation location = reader.read(cursor);
+        assertThat(location.getLocationId(), is(1L));
+        assertThat(location.getTime(), is(1000L));
+        assertThat(location.getLatitude(), is(49.0));
+        assertThat(location.getLongitude(), is(17.0));
+        assertThat(location.hasAccuracy(), is(true));
+        assertThat(location.getAccuracy(), is(10f));
+        assertThat(location.getProvider() == null, is(true));
+        assertThat(location.hasSpeed(), is(false));
+    }
+
+    @Test
+    public void testReuseLocation() {
+        MatrixCursor cursor = createCursor();
+        LocationCursorReader reader = new LocationCursorReader(cursor);
+        BackgroundLocation flyweight = new BackgroundLocation();
+
+        cursor.moveToNext();
+        BackgroundLocation first = reader.read(cursor, flyweight);
+        assertThat(first.hasAccuracy(), is(true));
+
+        cursor.moveToNext();
+        BackgroundLocation second = reader.read(cursor, flyweight);
+        assertThat(second == flyweight, is(true));
+        assertThat(second.getLocationId(), is(2L));
+        assertThat(second.getTime(), is(2000L));
+        assertThat(second.getLatitude(), is(49.1));
+        assertThat(second.hasAccuracy(), is(false));
+    }
+}
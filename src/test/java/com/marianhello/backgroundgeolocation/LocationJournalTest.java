@@ -0,0 +1,258 @@
+package com.marianhello.backgroundgeolocation;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.LocationDAO;
+import com.marianhello.bgloc.data.LocationJournal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+public class LocationJournalTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private LocationDAO mockDAOWithIds() {
+        LocationDAO mockDAO = mock(LocationDAO.class);
+        doAnswer(new Answer<Void>() {
+            private long nextId = 1;
+
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                Collection<BackgroundLocation> locations = (Collection<BackgroundLocation>) invocation.getArguments()[0];
+                for (BackgroundLocation location : locations) {
+                    location.setLocationId(nextId++);
+                }
+                return null;
+            }
+        }).when(mockDAO).persistLocations(anyCollectionOf(BackgroundLocation.class));
+        return mockDAO;
+    }
+
+    @Test
+    public void shouldNotPersistLocationDeletedBeforeFlush() {
+        LocationDAO mockDAO = mockDAOWithIds();
+        LocationJournal journal = new LocationJournal(mockDAO, 100, 60000);
+
+        BackgroundLocation location = new BackgroundLocation();
+        journal.append(location);
+        journal.setStatus(location, BackgroundLocation.DELETED);
+        journal.flush();
+
+        verify(mockDAO, never()).persistLocations(anyCollectionOf(BackgroundLocation.class));
+        verify(mockDAO, never()).deleteLocationsById(anyCollectionOf(Long.class));
+    }
+
+    @Test
+    public void shouldFoldStatusIntoInsert() {
+        LocationDAO mockDAO = mockDAOWithIds();
+        LocationJournal journal = new LocationJournal(mockDAO, 100, 60000);
+
+        for (int i = 0; i < 10; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            journal.append(location);
+            journal.setStatus(location, BackgroundLocation.SYNC_PENDING);
+        }
+        assertThat(journal.getPendingForSyncCount(), is(10));
+        journal.flush();
+
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(mockDAO, times(1)).persistLocations(captor.capture());
+        Collection<BackgroundLocation> persisted = captor.getValue();
+        assertThat(persisted.size(), is(10));
+        for (BackgroundLocation location : persisted) {
+            assertThat(location.getStatus(), is(BackgroundLocation.SYNC_PENDING));
+        }
+        verify(mockDAO, never()).updateLocationsForSync(anyCollectionOf(Long.class));
+        assertThat(journal.getPendingForSyncCount(), is(0));
+    }
+
+    @Test
+    public void shouldUpdatePersistedLocationsById() {
+        LocationDAO mockDAO = mockDAOWithIds();
+        LocationJournal journal = new LocationJournal(mockDAO, 100, 60000);
+
+        BackgroundLocation location1 = new BackgroundLocation();
+        BackgroundLocation location2 = new BackgroundLocation();
+        journal.append(location1);
+        journal.append(location2);
+        journal.flush();
+
+        journal.setStatus(location1, BackgroundLocation.SYNC_PENDING);
+        journal.setStatus(location2, BackgroundLocation.DELETED);
+        journal.flush();
+
+        ArgumentCaptor<Collection> syncCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(mockDAO).updateLocationsForSync(syncCaptor.capture());
+        assertThat(syncCaptor.getValue().contains(1L), is(true));
+        assertThat(syncCaptor.getValue().size(), is(1));
+
+        ArgumentCaptor<Collection> deleteCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(mockDAO).deleteLocationsById(deleteCaptor.capture());
+        assertThat(deleteCaptor.getValue().contains(2L), is(true));
+        assertThat(deleteCaptor.getValue().size(), is(1));
+    }
+
+    @Test
+    public void shouldFlushWhenMaxPendingOpsReached() throws InterruptedException {
+        LocationDAO mockDAO = mockDAOWithIds();
+        LocationJournal journal = new LocationJournal(mockDAO, 5, 60000);
+
+        for (int i = 0; i < 5; i++) {
+            journal.append(new BackgroundLocation());
+        }
+
+        Thread.sleep(500);
+        verify(mockDAO, times(1)).persistLocations(anyCollectionOf(BackgroundLocation.class));
+    }
+
+    @Test
+    public void shouldFlushAfterFlushInterval() throws InterruptedException {
+        LocationDAO mockDAO = mockDAOWithIds();
+        LocationJournal journal = new LocationJournal(mockDAO, 100, 100);
+
+        journal.append(new BackgroundLocation());
+
+        Thread.sleep(1000);
+        verify(mockDAO, times(1)).persistLocations(anyCollectionOf(BackgroundLocation.class));
+    }
+
+    @Test
+    public void shouldRetryFailedWrite() {
+        LocationDAO mockDAO = mock(LocationDAO.class);
+        doThrow(new RuntimeException("disk I/O error")).doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                Collection<BackgroundLocation> locations = (Collection<BackgroundLocation>) invocation.getArguments()[0];
+                for (BackgroundLocation location : locations) {
+                    location.setLocationId(1L);
+                }
+                return null;
+            }
+        }).when(mockDAO).persistLocations(anyCollectionOf(BackgroundLocation.class));
+        LocationJournal journal = new LocationJournal(mockDAO, 100, 60000);
+
+        BackgroundLocation location = new BackgroundLocation();
+        journal.append(location);
+        journal.flush();
+        assertThat(location.getLocationId() == null, is(true));
+
+        journal.setStatus(location, BackgroundLocation.SYNC_PENDING);
+        journal.flush();
+
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(mockDAO, times(2)).persistLocations(captor.capture());
+        assertThat(captor.getValue().size(), is(1));
+        assertThat(location.getLocationId(), is(1L));
+        assertThat(location.getStatus(), is(BackgroundLocation.SYNC_PENDING));
+        journal.shutdown();
+    }
+
+    @Test
+    public void shouldWriteThroughAfterShutdown() {
+        LocationDAO mockDAO = mockDAOWithIds();
+        LocationJournal journal = new LocationJournal(mockDAO, 100, 60000);
+
+        journal.append(new BackgroundLocation());
+        journal.shutdown();
+        verify(mockDAO, times(1)).persistLocations(anyCollectionOf(BackgroundLocation.class));
+
+        journal.append(new BackgroundLocation());
+        verify(mockDAO, times(2)).persistLocations(anyCollectionOf(BackgroundLocation.class));
+    }
+
+    @Test
+    public void shouldReplayJournalFileAfterProcessDeath() throws IOException {
+        File journalFile = tmpFolder.newFile();
+        LocationJournal killedJournal = new LocationJournal(mockDAOWithIds(), journalFile, 100, 60000);
+        BackgroundLocation location1 = new BackgroundLocation();
+        location1.setLatitude(48.1);
+        BackgroundLocation location2 = new BackgroundLocation();
+        BackgroundLocation location3 = new BackgroundLocation();
+        killedJournal.append(location1);
+        killedJournal.append(location2);
+        killedJournal.append(location3);
+        killedJournal.setStatus(location2, BackgroundLocation.SYNC_PENDING);
+        killedJournal.setStatus(location3, BackgroundLocation.DELETED);
+
+        LocationDAO mockDAO = mockDAOWithIds();
+        LocationJournal journal = new LocationJournal(mockDAO, journalFile, 100, 60000);
+        assertThat(journal.getPendingForSyncCount(), is(1));
+        journal.flush();
+
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(mockDAO, times(1)).persistLocations(captor.capture());
+        List<BackgroundLocation> persisted = new ArrayList<BackgroundLocation>(captor.getValue());
+        assertThat(persisted.size(), is(2));
+        assertThat(persisted.get(0).getLatitude(), is(48.1));
+        assertThat(persisted.get(0).getStatus(), is(BackgroundLocation.POST_PENDING));
+        assertThat(persisted.get(1).getStatus(), is(BackgroundLocation.SYNC_PENDING));
+        assertThat(journalFile.exists(), is(false));
+        journal.shutdown();
+    }
+
+    @Test
+    public void shouldReplayStatusChangeOfWrittenLocationById() throws IOException {
+        File journalFile = tmpFolder.newFile();
+        LocationJournal killedJournal = new LocationJournal(mockDAOWithIds(), journalFile, 100, 60000);
+        BackgroundLocation location = new BackgroundLocation();
+        killedJournal.append(location);
+        killedJournal.flush();
+        killedJournal.setStatus(location, BackgroundLocation.SYNC_PENDING);
+
+        LocationDAO mockDAO = mockDAOWithIds();
+        LocationJournal journal = new LocationJournal(mockDAO, journalFile, 100, 60000);
+        journal.flush();
+
+        verify(mockDAO, never()).persistLocations(anyCollectionOf(BackgroundLocation.class));
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(mockDAO).updateLocationsForSync(captor.capture());
+        assertThat(captor.getValue().contains(1L), is(true));
+        assertThat(captor.getValue().size(), is(1));
+        journal.shutdown();
+    }
+
+    @Test
+    public void shouldKeepJournalFileWhenWriteFails() throws IOException {
+        File journalFile = tmpFolder.newFile();
+        LocationDAO failingDAO = mock(LocationDAO.class);
+        doThrow(new RuntimeException("disk I/O error"))
+                .when(failingDAO).persistLocations(anyCollectionOf(BackgroundLocation.class));
+        LocationJournal killedJournal = new LocationJournal(failingDAO, journalFile, 100, 60000);
+        killedJournal.append(new BackgroundLocation());
+        killedJournal.flush();
+        assertThat(journalFile.length() > 0, is(true));
+
+        LocationDAO mockDAO = mockDAOWithIds();
+        LocationJournal journal = new LocationJournal(mockDAO, journalFile, 100, 60000);
+        journal.flush();
+
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(mockDAO, times(1)).persistLocations(captor.capture());
+        assertThat(captor.getValue().size(), is(1));
+        journal.shutdown();
+    }
+}
@@ -0,0 +1,103 @@
+package com.marianhello.backgroundgeolocation;
+
+import com.marianhello.bgloc.data.BackgroundLocation;
+import com.marianhello.bgloc.data.LocationEncoder;
+import com.marianhello.bgloc.data.PolylineLocationEncoder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class PolylineLocationEncoderTest {
+
+    private static BackgroundLocation createLocation(double latitude, double longitude, long time, Float accuracy) {
+        BackgroundLocation location = new BackgroundLocation();
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        location.setTime(time);
+        if (accuracy != null) {
+            location.setAccuracy(accuracy);
+        }
+        return location;
+    }
+
+    private static JSONObject encode(PolylineLocationEncoder encoder, List<BackgroundLocation> locations) throws IOException, JSONException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LocationEncoder.Writer writer = encoder.newWriter(out, null);
+        writer.beginArray();
+        for (BackgroundLocation location : locations) {
+            writer.write(location);
+        }
+        writer.endArray();
+        writer.close();
+        return new JSONObject(out.toString("UTF-8"));
+    }
+
+    // reference decoder as described in PolylineLocationEncoder
+    private static List<Long> decode(String encoded) {
+        List<Long> values = new ArrayList<Long>();
+        int index = 0;
+        while (index < encoded.length()) {
+            long result = 0;
+            int shift = 0;
+            long b;
+            do {
+                b = encoded.charAt(index++) - 63;
+                result |= (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            values.add((result & 1) != 0 ? ~(result >> 1) : result >> 1);
+        }
+        return values;
+    }
+
+    @Test
+    public void testFirstPointIsGooglePolyline() throws IOException, JSONException {
+        List<BackgroundLocation> locations = new ArrayList<BackgroundLocation>();
+        locations.add(createLocation(38.5, -120.2, 0, null));
+
+        JSONObject result = encode(new PolylineLocationEncoder(5), locations);
+        assertThat(result.getString("encoding"), is("polyline"));
+        assertThat(result.getInt("precision"), is(5));
+        // from Google polyline documentation
+        assertThat(result.getString("points"), is("_p~iF~ps|U"));
+        // time 0 and accuracy -1
+        assertThat(result.getString("extras"), is("?@"));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException, JSONException {
+        List<BackgroundLocation> locations = new ArrayList<BackgroundLocation>();
+        locations.add(createLocation(48.1234567, 17.1234567, 1514764800000L, 12.4f));
+        locations.add(createLocation(48.1234667, 17.1234467, 1514764801000L, 9f));
+        locations.add(createLocation(-33.8688197, 151.2092955, 1514764801500L, null));
+        locations.add(createLocation(-33.8688197, 151.2092955, 1514764801500L, 1f));
+
+        JSONObject result = encode(new PolylineLocationEncoder(), locations);
+        List<Long> points = decode(result.getString("points"));
+        List<Long> extras = decode(result.getString("extras"));
+        assertThat(points.size(), is(locations.size() * 2));
+        assertThat(extras.size(), is(locations.size() * 2));
+
+        long[] prev = new long[4];
+        for (int i = 0; i < locations.size(); i++) {
+            prev[0] += points.get(i * 2);
+            prev[1] += points.get(i * 2 + 1);
+            prev[2] += extras.get(i * 2);
+            prev[3] += extras.get(i * 2 + 1);
+            BackgroundLocation location = locations.get(i);
+            assertThat(prev[0], is(Math.round(location.getLatitude() * 1e6)));
+            assertThat(prev[1], is(Math.round(location.getLongitude() * 1e6)));
+            assertThat(prev[2], is(location.getTime()));
+            assertThat(prev[3], is(location.hasAccuracy() ? (long) Math.round(location.getAccuracy()) : -1L));
+        }
+    }
+}
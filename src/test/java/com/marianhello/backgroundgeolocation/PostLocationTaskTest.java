@@ -1,5 +1,6 @@
 package com.marianhello.backgroundgeolocation;
 
+import com.marianhello.bgloc.CircuitBreaker;
 import com.marianhello.bgloc.Config;
 import com.marianhello.bgloc.ConnectivityListener;
 import com.marianhello.bgloc.PostLocationTask;
@@ -7,6 +8,8 @@ import com.marianhello.bgloc.PostLocationTask.PostLocationTaskListener;
 import com.marianhello.bgloc.data.BackgroundLocation;
 import com.marianhello.bgloc.data.LocationDAO;
 
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -16,8 +19,11 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.robolectric.RobolectricTestRunner;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.ProtocolException;
@@ -25,12 +31,19 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
 import java.net.URLStreamHandlerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.RejectedExecutionException;
 
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Test inspired by
@@ -114,6 +127,160 @@ public class PostLocationTaskTest {
         verify(mockHttpURLConnection, times(10)).setRequestMethod("POST");
     }
 
+    @Test
+    public void persistTaskInBatches() throws ProtocolException, InterruptedException {
+        LocationDAO mockDAO = mock(LocationDAO.class);
+
+        PostLocationTaskListener mockListener = mock(PostLocationTaskListener.class);
+        PostLocationTask task = new PostLocationTask(mockDAO,mockListener, connectivityListener);
+
+        Config config = Config.getDefault();
+        config.setUrl(TEST_PROTOCOL + "://localhost:3000/locations");
+        config.setSyncUrl(TEST_PROTOCOL + "://localhost:3000/sync");
+        config.setPostBatchSize(5);
+        config.setPostBatchDelay(1000);
+        task.setConfig(config);
+
+        for (int i = 0; i < 10; i++) {
+            task.add(new BackgroundLocation());
+        }
+
+        Thread.sleep(3000);
+        verify(mockHttpURLConnection, times(2)).setRequestMethod("POST");
+    }
+
+    @Test
+    public void postedBodyLengthShouldBeInBytes() throws IOException, JSONException, InterruptedException {
+        LocationDAO mockDAO = mock(LocationDAO.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(mockHttpURLConnection.getOutputStream()).thenReturn(body);
+        when(mockHttpURLConnection.getResponseCode()).thenReturn(200);
+
+        PostLocationTaskListener mockListener = mock(PostLocationTaskListener.class);
+        PostLocationTask task = new PostLocationTask(mockDAO,mockListener, connectivityListener);
+
+        Config config = Config.getDefault();
+        config.setUrl(TEST_PROTOCOL + "://localhost:3000/locations");
+        task.setConfig(config);
+
+        BackgroundLocation location = new BackgroundLocation();
+        location.setProvider("gps\u00e9\u20ac");
+        location.setLatitude(49.5);
+        task.add(location);
+
+        Thread.sleep(1000);
+        verify(mockHttpURLConnection).setFixedLengthStreamingMode(body.size());
+        JSONArray locations = new JSONArray(body.toString("UTF-8"));
+        assertThat(locations.getJSONObject(0).getString("provider"), is("gps\u00e9\u20ac"));
+        assertThat(locations.getJSONObject(0).getDouble("latitude"), is(49.5));
+    }
+
+    @Test
+    public void persistTaskShouldOverflowToSyncWhenQueueIsFull() throws InterruptedException {
+        LocationDAO mockDAO = mock(LocationDAO.class);
+
+        PostLocationTaskListener mockListener = mock(PostLocationTaskListener.class);
+        PostLocationTask task = new PostLocationTask(mockDAO,mockListener, connectivityListener, 2);
+
+        Config config = Config.getDefault();
+        config.setUrl(SLOW_PROTOCOL + "://localhost:3000/locations");
+        config.setSyncUrl(SLOW_PROTOCOL + "://localhost:3000/sync");
+        task.setConfig(config);
+
+        for (int i = 0; i < 10; i++) {
+            task.add(new BackgroundLocation());
+            assertThat(task.getQueueSize() <= 2, is(true));
+        }
+        assertThat(task.getOverflowCount() >= 7, is(true));
+
+        Thread.sleep(3000);
+        assertThat(task.getQueueSize(), is(0));
+        verify(mockHttpURLConnection, times(10 - (int) task.getOverflowCount())).setRequestMethod("POST");
+    }
+
+    @Test
+    public void drainBacklogWhenConnectivityReturns() throws InterruptedException {
+        LocationDAO mockDAO = mock(LocationDAO.class);
+        List<BackgroundLocation> backlog = new ArrayList<BackgroundLocation>();
+        for (int i = 1; i <= 3; i++) {
+            BackgroundLocation location = new BackgroundLocation();
+            location.setLocationId((long) i);
+            location.setStatus(BackgroundLocation.SYNC_PENDING);
+            backlog.add(location);
+        }
+        when(mockDAO.getLocationsForSync(0, PostLocationTask.BACKLOG_PAGE_SIZE)).thenReturn(backlog);
+
+        PostLocationTaskListener mockListener = mock(PostLocationTaskListener.class);
+        PostLocationTask task = new PostLocationTask(mockDAO,mockListener, connectivityListener);
+
+        Config config = Config.getDefault();
+        config.setUrl(TEST_PROTOCOL + "://localhost:3000/locations");
+        task.setConfig(config);
+
+        task.setHasConnectivity(false);
+        task.setHasConnectivity(true);
+
+        Thread.sleep(1000);
+        verify(mockDAO).getLocationsForSync(0, PostLocationTask.BACKLOG_PAGE_SIZE);
+        verify(mockHttpURLConnection, times(1)).setRequestMethod("POST");
+    }
+
+    @Test
+    public void drainBacklogShouldNotDelayRealtimePosts() throws InterruptedException {
+        LocationDAO mockDAO = mock(LocationDAO.class);
+        when(mockDAO.getLocationsForSync(0, PostLocationTask.BACKLOG_PAGE_SIZE)).thenAnswer(new Answer<Collection<BackgroundLocation>>() {
+            @Override
+            public Collection<BackgroundLocation> answer(InvocationOnMock invocation) throws InterruptedException {
+                // slow backlog page
+                Thread.sleep(3000);
+                return new ArrayList<BackgroundLocation>();
+            }
+        });
+
+        PostLocationTaskListener mockListener = mock(PostLocationTaskListener.class);
+        PostLocationTask task = new PostLocationTask(mockDAO,mockListener, connectivityListener);
+
+        Config config = Config.getDefault();
+        config.setUrl(TEST_PROTOCOL + "://localhost:3000/locations");
+        task.setConfig(config);
+
+        task.setHasConnectivity(false);
+        task.setHasConnectivity(true);
+        Thread.sleep(200);
+        task.add(new BackgroundLocation());
+
+        Thread.sleep(1000);
+        verify(mockHttpURLConnection, times(1)).setRequestMethod("POST");
+    }
+
+    @Test
+    public void probeServerWhenCircuitBackoffExpires() throws IOException, InterruptedException {
+        LocationDAO mockDAO = mock(LocationDAO.class);
+        when(mockDAO.getLocationsForSync(0, PostLocationTask.BACKLOG_PAGE_SIZE))
+                .thenReturn(new ArrayList<BackgroundLocation>());
+        when(mockHttpURLConnection.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(mockHttpURLConnection.getResponseCode()).thenReturn(503);
+
+        PostLocationTaskListener mockListener = mock(PostLocationTaskListener.class);
+        PostLocationTask task = new PostLocationTask(mockDAO,mockListener, connectivityListener);
+
+        Config config = Config.getDefault();
+        config.setUrl(TEST_PROTOCOL + "://localhost:3000/locations");
+        task.setConfig(config);
+
+        // open circuit, then stay stationary
+        for (int i = 0; i < CircuitBreaker.DEFAULT_FAILURE_THRESHOLD; i++) {
+            task.add(new BackgroundLocation());
+        }
+        Thread.sleep(1000);
+        verify(mockDAO, never()).getLocationsForSync(0, PostLocationTask.BACKLOG_PAGE_SIZE);
+
+        // jittered backoff expires at latest after base backoff
+        Thread.sleep(CircuitBreaker.DEFAULT_BASE_BACKOFF_MILLIS);
+        verify(mockDAO).getLocationsForSync(0, PostLocationTask.BACKLOG_PAGE_SIZE);
+        task.shutdown();
+    }
+
     @Test
     public void persistTaskShouldRejectAfterShutdown() {
         LocationDAO mockDAO = mock(LocationDAO.class);
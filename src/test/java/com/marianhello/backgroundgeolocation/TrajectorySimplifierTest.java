@@ -0,0 +1,123 @@
+package com.marianhello.backgroundgeolocation;
+
+import com.marianhello.bgloc.TrajectorySimplifier;
+import com.marianhello.bgloc.data.BackgroundLocation;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class TrajectorySimplifierTest {
+
+    private static class CollectingListener implements TrajectorySimplifier.Listener {
+        final List<BackgroundLocation> committed = new ArrayList<BackgroundLocation>();
+
+        @Override
+        public synchronized void onCommit(BackgroundLocation location) {
+            committed.add(location);
+        }
+
+        synchronized int size() {
+            return committed.size();
+        }
+    }
+
+    private static BackgroundLocation createLocation(double latitude, double longitude) {
+        BackgroundLocation location = new BackgroundLocation();
+        location.setLatitude(latitude);
+        location.setLongitude(longitude);
+        return location;
+    }
+
+    @Test
+    public void shouldCommitOnlyCorners() {
+        CollectingListener listener = new CollectingListener();
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(5, 60000, listener);
+
+        // ~11m steps north, then east
+        List<BackgroundLocation> north = new ArrayList<BackgroundLocation>();
+        for (int i = 0; i <= 10; i++) {
+            BackgroundLocation location = createLocation(i * 0.0001, 0);
+            north.add(location);
+            simplifier.add(location);
+        }
+        assertThat(listener.size(), is(1));
+        assertThat(simplifier.getHeldCount(), is(10));
+
+        for (int i = 1; i <= 10; i++) {
+            simplifier.add(createLocation(0.001, i * 0.0001));
+        }
+        assertThat(listener.size(), is(2));
+        assertThat(listener.committed.get(0), is(north.get(0)));
+        assertThat(listener.committed.get(1), is(north.get(10)));
+
+        simplifier.shutdown();
+        assertThat(listener.size(), is(3));
+        assertThat(listener.committed.get(2).getLongitude(), is(0.001));
+    }
+
+    @Test
+    public void shouldKeepPointsOutsideTolerance() {
+        CollectingListener listener = new CollectingListener();
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(5, 60000, listener);
+
+        // zig-zag with ~22m amplitude
+        for (int i = 0; i < 10; i++) {
+            simplifier.add(createLocation(i * 0.0001, (i % 2) * 0.0002));
+        }
+        assertThat(listener.size(), is(9));
+        simplifier.shutdown();
+    }
+
+    @Test
+    public void shouldBoundWindowSize() {
+        CollectingListener listener = new CollectingListener();
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(5, 4, 60000, listener);
+
+        for (int i = 0; i <= 9; i++) {
+            simplifier.add(createLocation(i * 0.0001, 0));
+        }
+        assertThat(simplifier.getHeldCount() <= 4, is(true));
+        assertThat(listener.size(), is(3));
+        simplifier.shutdown();
+    }
+
+    @Test
+    public void shouldCommitHeldLocationAfterMaxDelay() throws InterruptedException {
+        CollectingListener listener = new CollectingListener();
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(5, 50, listener);
+
+        simplifier.add(createLocation(0, 0));
+        simplifier.add(createLocation(0.0001, 0));
+        simplifier.add(createLocation(0.0002, 0));
+        assertThat(listener.size(), is(1));
+
+        for (int i = 0; i < 100 && listener.size() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(listener.size(), is(2));
+        assertThat(listener.committed.get(1).getLatitude(), is(0.0002));
+        assertThat(simplifier.getHeldCount(), is(0));
+        simplifier.shutdown();
+    }
+
+    @Test
+    public void shouldStartNewTrajectoryAfterClear() {
+        CollectingListener listener = new CollectingListener();
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(5, 60000, listener);
+
+        simplifier.add(createLocation(0, 0));
+        simplifier.add(createLocation(0.0001, 0));
+        simplifier.clear();
+        assertThat(simplifier.getHeldCount(), is(0));
+
+        simplifier.add(createLocation(1, 1));
+        assertThat(listener.size(), is(2));
+        assertThat(listener.committed.get(1).getLatitude(), is(1.0));
+        simplifier.shutdown();
+    }
+}